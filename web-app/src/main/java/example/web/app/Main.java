@@ -21,11 +21,18 @@ public abstract class Main extends Module implements HttpServer {
         // and start it.
         // At runtime, the server instantiates a new `GreetingController` for every request and delegates any
         // dependencies to itself, that is, its `Module` superclass.
-        breed(Main.class)
+        routes(breed(Main.class)).start(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+    }
+
+    // The routes are configured separately so that tests can drive them without starting the server.
+    // Concurrent identical GET requests share a single execution because the greeting only depends on the request URI,
+    // the `Accept-Language` header and, for choosing between JSON and CBOR, the `Accept` header.
+    static HttpServer.WithMethod<GreetingController> routes(HttpServer server) {
+        return server
                 .with(GreetingController.class)
                     .route("/greeting")
                         .get(GreetingController::get)
-                        .post(GreetingController::post)
-                .start(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+                            .coalesced("Accept-Language", "Accept")
+                        .post(GreetingController::post);
     }
 }
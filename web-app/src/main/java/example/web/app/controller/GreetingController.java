@@ -31,7 +31,7 @@ public interface GreetingController extends HttpController {
     default int get() throws Exception {
         final var g = new Greeting();
         g.message = message();
-        applicationJson().encode(g);
+        negotiated().encode(g);
         return 200;
     }
 
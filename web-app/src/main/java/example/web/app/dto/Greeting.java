@@ -4,6 +4,11 @@
  */
 package example.web.app.dto;
 
+import example.web.framework.json.JsonWritable;
+
+// The annotation processor in the web framework generates the class `GreetingJsonWriter` for this DTO, which is then
+// used by `HttpController.applicationJson()` instead of Jackson's reflective bean introspection.
+@JsonWritable
 public class Greeting {
 
     public String message;
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.app
+
+import java.lang.management.ManagementFactory
+
+import example.web.framework.spi.HttpEngine
+import example.web.framework.{HttpController, HttpMethod, StubHttpEngine, StubHttpExchange}
+import global.namespace.neuron.di.java.Incubator.wire
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+/** Drives each route of the web app against a stub exchange and checks the bytes allocated per request against a
+  * budget.
+  * The allocations are attributed to the stub exchange, the framework, i.e. dispatching to a route which does nothing,
+  * and the route itself.
+  * If a budget gets exceeded, check the allocation breakdown on the console.
+  */
+class AllocationBudgetSpec extends WordSpec {
+
+  import AllocationBudgetSpec._
+
+  "Each route of the web app" should {
+    "stay within its allocation budget" in {
+      val engine = new StubHttpEngine
+      val app = Main
+        .routes(wire(classOf[Main]).bind[HttpEngine](_.engine).to(engine).breed)
+        .`with`(classOf[HttpController])
+          .route(BaselinePath)
+            .get(_ => 204)
+      app.start(0)
+      val handlers = engine.handlers
+      val routes = for {
+        (path, methods) <- app.routes.asScala.toList
+        method <- methods.keySet.asScala
+      } yield (method, path)
+
+      def measure(method: HttpMethod, path: String, handle: Boolean): Long = {
+        val handler = handlers.get(path)
+        def run(): Unit = {
+          val exchange = new StubHttpExchange(method.name, path + "?who=budget")
+          exchange.requestHeaders.add("Accept-Language", "de, en;q=0.9")
+          if (handle) {
+            handler.handle(exchange)
+          }
+        }
+
+        for (_ <- 1 to WarmUpRequests) run()
+        val before = allocatedBytes
+        for (_ <- 1 to MeasuredRequests) run()
+        (allocatedBytes - before) / MeasuredRequests
+      }
+
+      val stub = measure(HttpMethod.GET, BaselinePath, handle = false)
+      val framework = measure(HttpMethod.GET, BaselinePath, handle = true) - stub
+      val results = routes.filter(_._2 != BaselinePath).sortBy(_.toString).map { case route @ (method, path) =>
+        val total = measure(method, path, handle = true)
+        val budget = budgets.getOrElse(route, fail(s"There is no allocation budget for $method $path."))
+        (route, total - stub - framework, budget)
+      }
+
+      println(f"Allocated bytes per request (stub exchange: $stub%,d, framework: $framework%,d):")
+      for (((method, path), own, budget) <- results) {
+        println(f"  $method%-7s $path%-20s ${framework + own}%,10d of budget $budget%,10d (route itself: $own%,d)")
+      }
+      for (((method, path), own, budget) <- results) {
+        withClue(s"$method $path: ") {
+          framework + own should be <= budget
+        }
+      }
+    }
+  }
+}
+
+private object AllocationBudgetSpec {
+
+  val BaselinePath = "/allocation-baseline"
+
+  val WarmUpRequests = 5000
+
+  val MeasuredRequests = 1000
+
+  /** The allocation budgets in bytes per request, excluding the stub exchange.
+    * The budget for `POST /greeting` is much higher because it randomly throws an exception, which renders a stack
+    * trace.
+    */
+  val budgets: Map[(HttpMethod, String), Long] = Map(
+    (HttpMethod.GET, "/greeting") -> 32 * 1024L,
+    (HttpMethod.POST, "/greeting") -> 128 * 1024L,
+  )
+
+  private val threads = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+
+  def allocatedBytes: Long = threads.getThreadAllocatedBytes(Thread.currentThread.getId)
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.app
+
+import java.util.concurrent.{Callable, CyclicBarrier, Executors}
+
+import example.web.framework.spi.HttpEngine
+import example.web.framework.{StubHttpEngine, StubHttpExchange}
+import global.namespace.neuron.di.java.Incubator.wire
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+class MainSpec extends WordSpec {
+
+  import MainSpec._
+
+  "The greeting route" should {
+    "not share responses among concurrent requests with different Accept headers" in {
+      val engine = new StubHttpEngine
+      Main.routes(wire(classOf[Main]).bind[HttpEngine](_.engine).to(engine).breed).start(0)
+      val handler = engine.handlers.get("/greeting")
+      val barrier = new CyclicBarrier(Threads)
+      val executor = Executors.newFixedThreadPool(Threads)
+      try {
+        for (_ <- 1 to Rounds) {
+          val tasks = (0 until Threads).map { i =>
+            val accept = Accepts(i % Accepts.size)
+            (() => {
+              val exchange = new StubHttpExchange("GET", "/greeting?who=you")
+              exchange.requestHeaders.add("Accept-Language", "de")
+              exchange.requestHeaders.add("Accept", accept)
+              barrier.await()
+              handler.handle(exchange)
+              (accept, exchange)
+            }): Callable[(String, StubHttpExchange)]
+          }
+          for (future <- executor.invokeAll(tasks.asJava).asScala) {
+            val (accept, exchange) = future.get
+            withClue(s"Accept: $accept: ") {
+              if (accept == "text/html") {
+                exchange.statusCode shouldBe 406
+              } else {
+                exchange.statusCode shouldBe 200
+                exchange.responseHeaders.get("Content-Type").asScala shouldBe Seq(accept)
+                exchange.responseHeaders.get("Vary").asScala shouldBe Seq("Accept")
+                (exchange.responseBody.toByteArray.head == '{') shouldBe (accept == "application/json")
+              }
+            }
+          }
+        }
+      } finally {
+        executor.shutdown()
+      }
+    }
+  }
+}
+
+private object MainSpec {
+
+  val Accepts = Seq("application/json", "application/cbor", "text/html")
+
+  val Threads = 12
+
+  val Rounds = 200
+}
@@ -0,0 +1,15 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("example.web.framework.Action")
+@Label("HTTP Action Execution")
+@Description("Executes the action of a route and buffers its response body.")
+final class ActionEvent extends HttpEvent {
+}
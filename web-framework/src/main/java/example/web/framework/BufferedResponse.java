@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import example.web.framework.spi.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * The status code and body of a response which has been buffered before sending it.
+ * The response headers are kept in the exchange.
+ */
+final class BufferedResponse {
+
+    /**
+     * Indicates that the exchange has been subscribed to an {@link EventHub}, so it must not be closed.
+     */
+    static final BufferedResponse SUBSCRIBED = new BufferedResponse(200, new byte[0]);
+
+    final int statusCode;
+    final byte[] body;
+
+    BufferedResponse(final int statusCode, final byte[] body) {
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    void sendTo(final HttpExchange exchange) throws IOException {
+        if (0 == body.length) {
+            exchange.sendResponseHeaders(statusCode, -1);
+        } else {
+            exchange.sendResponseHeaders(statusCode, body.length);
+            try (var out = exchange.responseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
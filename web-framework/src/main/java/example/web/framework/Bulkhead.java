@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Isolates the routes assigned to it from all other routes by executing their requests on its own threads with a
+ * limited concurrency and a bounded queue.
+ * If both are exhausted, then requests get rejected with the status code {@code 503} without wiring a controller.
+ * Bulkheads are thread-safe and can be shared by multiple routes.
+ */
+public final class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final int maxQueueSize;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejections = new AtomicLong();
+
+    private Bulkhead(final String name, final int maxConcurrentCalls, final int maxQueueSize) {
+        this.name = requireNonNull(name);
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("`maxConcurrentCalls` needs to be positive.");
+        }
+        if (maxQueueSize < 0) {
+            throw new IllegalArgumentException("`maxQueueSize` must not be negative.");
+        }
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxQueueSize = maxQueueSize;
+        final var threads = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                maxConcurrentCalls,
+                maxConcurrentCalls,
+                60, TimeUnit.SECONDS,
+                0 == maxQueueSize ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(maxQueueSize),
+                task -> {
+                    final var thread = new Thread(task, "bulkhead-" + name + "-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns a new bulkhead with the given name, maximum number of concurrent calls and maximum number of queued
+     * calls.
+     */
+    public static Bulkhead of(String name, int maxConcurrentCalls, int maxQueueSize) {
+        return new Bulkhead(name, maxConcurrentCalls, maxQueueSize);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int maxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int maxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Returns the approximate number of calls in progress.
+     */
+    public int activeCalls() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of queued calls.
+     */
+    public int queuedCalls() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the total number of rejected calls.
+     */
+    public long rejections() {
+        return rejections.get();
+    }
+
+    /**
+     * Executes the given task on a thread of this bulkhead.
+     *
+     * @return {@code false} if the task has been rejected because this bulkhead is full.
+     */
+    boolean execute(final Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejections.incrementAndGet();
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead[name=" + name + ", activeCalls=" + activeCalls() + ", queuedCalls=" + queuedCalls() +
+                ", rejections=" + rejections() + "]";
+    }
+}
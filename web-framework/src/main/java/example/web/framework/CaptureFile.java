@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The binary format of a file with captured exchanges.
+ * The file is a sequence of segments, one per capturing server run, so it can only ever be appended to.
+ * Each segment starts with a header and is followed by the records of the captured exchanges:
+ * <pre>{@code
+ * header = 'S' magic:int version:short epochNanos:long
+ * record = 'E' recordLength:int offsetNanos:long durationNanos:long method:utf uri:utf
+ *          headerCount:short (name:utf valueCount:short value:utf*)* bodyLength:int body:byte*
+ *          statusCode:short responseLength:long responseChecksum:int
+ * }</pre>
+ * where {@code utf} is the modified UTF-8 encoding of {@link DataOutput#writeUTF(String)}, {@code recordLength} is
+ * the number of bytes following it and {@code offsetNanos} is relative to the {@code epochNanos} of the segment.
+ * If a server gets killed while writing a record, then the incomplete record gets truncated by the next server run
+ * before it appends its segment.
+ */
+final class CaptureFile {
+
+    static final int MAGIC = 0x57464350; // "WFCP"
+    static final short VERSION = 2;
+
+    private static final byte SEGMENT = 'S';
+    private static final byte EXCHANGE = 'E';
+
+    private static final int SEGMENT_HEADER_SIZE = 1 + 4 + 2 + 8;
+    private static final int MAX_UTF_SIZE = 65535;
+    private static final int MAX_COUNT = 65535;
+
+    /**
+     * Truncates the given file after its last complete segment header or record, if it exists.
+     */
+    static void truncate(final Path file) throws IOException {
+        if (Files.exists(file)) {
+            final long length = completeLength(file);
+            try (var channel = FileChannel.open(file, WRITE)) {
+                channel.truncate(length);
+            }
+        }
+    }
+
+    private static long completeLength(final Path file) throws IOException {
+        long length = 0;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            for (int tag; 0 <= (tag = in.read()); ) {
+                if (SEGMENT == tag) {
+                    readSegment(in, file);
+                    length += SEGMENT_HEADER_SIZE;
+                } else if (EXCHANGE == tag) {
+                    final int recordLength = in.readInt();
+                    if (in.skipBytes(recordLength) < recordLength) {
+                        break;
+                    }
+                    length += 1 + 4 + recordLength;
+                } else {
+                    throw new IOException(file + " is corrupted.");
+                }
+            }
+        } catch (EOFException e) {
+            // The last segment header or record is incomplete.
+        }
+        return length;
+    }
+
+    /**
+     * Returns {@code true} if the strings and counts of the given exchange fit into a record.
+     */
+    static boolean fits(final CapturedExchange exchange) {
+        final var headers = exchange.headers();
+        if (!fits(exchange.method()) || !fits(exchange.uri()) || headers.size() > MAX_COUNT) {
+            return false;
+        }
+        for (final var header : headers.entrySet()) {
+            final var values = header.getValue();
+            if (!fits(header.getKey()) || values.size() > MAX_COUNT) {
+                return false;
+            }
+            for (final var value : values) {
+                if (!fits(value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the modified UTF-8 encoding of the given string fits into
+     * {@link DataOutput#writeUTF(String)}.
+     */
+    private static boolean fits(final String s) {
+        final int length = s.length();
+        if (length <= MAX_UTF_SIZE / 3) {
+            return true;
+        }
+        long size = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            size += 0 < c && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return size <= MAX_UTF_SIZE;
+    }
+
+    static void writeSegment(final DataOutput out, final long epochNanos) throws IOException {
+        out.writeByte(SEGMENT);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(epochNanos);
+    }
+
+    /**
+     * Writes a record for the given exchange, which must {@linkplain #fits(CapturedExchange) fit}.
+     * The record gets assembled in the given buffer first in order to prefix it with its length.
+     */
+    static void writeExchange(
+            final DataOutputStream out,
+            final ByteArrayOutputStream buffer,
+            final long epochNanos,
+            final CapturedExchange exchange
+    ) throws IOException {
+        buffer.reset();
+        writeRecord(new DataOutputStream(buffer), epochNanos, exchange);
+        out.writeByte(EXCHANGE);
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+    }
+
+    private static void writeRecord(final DataOutput out, final long epochNanos, final CapturedExchange exchange)
+            throws IOException {
+        out.writeLong(exchange.timestamp() - epochNanos);
+        out.writeLong(exchange.duration());
+        out.writeUTF(exchange.method());
+        out.writeUTF(exchange.uri());
+        final var headers = exchange.headers();
+        out.writeShort(headers.size());
+        for (final var header : headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            final var values = header.getValue();
+            out.writeShort(values.size());
+            for (final var value : values) {
+                out.writeUTF(value);
+            }
+        }
+        final var body = exchange.body();
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(exchange.statusCode());
+        out.writeLong(exchange.responseLength());
+        out.writeInt(exchange.responseChecksum());
+    }
+
+    /**
+     * Reads the given file and passes each captured exchange to the given consumer in the order of capturing.
+     */
+    static void forEach(final Path file, final Consumer<? super CapturedExchange> consumer) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long epochNanos = 0;
+            for (int tag; 0 <= (tag = in.read()); ) {
+                if (SEGMENT == tag) {
+                    epochNanos = readSegment(in, file);
+                } else if (EXCHANGE == tag) {
+                    final var record = new byte[in.readInt()];
+                    in.readFully(record);
+                    consumer.accept(readExchange(new DataInputStream(new ByteArrayInputStream(record)), epochNanos));
+                } else {
+                    throw new IOException(file + " is corrupted.");
+                }
+            }
+        } catch (EOFException e) {
+            // The last record is incomplete, e.g. because the server has been killed.
+        }
+    }
+
+    /**
+     * Reads the rest of a segment header and returns its {@code epochNanos}.
+     */
+    private static long readSegment(final DataInputStream in, final Path file) throws IOException {
+        if (MAGIC != in.readInt() || VERSION != in.readShort()) {
+            throw new IOException(file + " is not a capture file of a supported version.");
+        }
+        return in.readLong();
+    }
+
+    private static CapturedExchange readExchange(final DataInputStream in, final long epochNanos) throws IOException {
+        final long timestamp = epochNanos + in.readLong();
+        final long duration = in.readLong();
+        final var method = in.readUTF();
+        final var uri = in.readUTF();
+        final var headers = new LinkedHashMap<String, List<String>>();
+        for (int i = in.readUnsignedShort(); 0 < i; i--) {
+            final var name = in.readUTF();
+            final var values = new ArrayList<String>();
+            for (int j = in.readUnsignedShort(); 0 < j; j--) {
+                values.add(in.readUTF());
+            }
+            headers.put(name, values);
+        }
+        final var body = new byte[in.readInt()];
+        in.readFully(body);
+        final int statusCode = in.readUnsignedShort();
+        final long responseLength = in.readLong();
+        final int responseChecksum = in.readInt();
+        return new CapturedExchange(timestamp, method, uri, headers, body, statusCode, responseLength,
+                responseChecksum, duration);
+    }
+
+    private CaptureFile() {
+    }
+}
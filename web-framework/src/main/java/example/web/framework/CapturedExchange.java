@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toUnmodifiableMap;
+
+/**
+ * An immutable exchange which has been captured according to a {@link TrafficCapture}.
+ */
+public final class CapturedExchange {
+
+    private final long timestamp;
+    private final String method;
+    private final String uri;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final int statusCode;
+    private final long responseLength;
+    private final int responseChecksum;
+    private final long duration;
+
+    CapturedExchange(
+            final long timestamp,
+            final String method,
+            final String uri,
+            final Map<String, List<String>> headers,
+            final byte[] body,
+            final int statusCode,
+            final long responseLength,
+            final int responseChecksum,
+            final long duration
+    ) {
+        this.timestamp = timestamp;
+        this.method = requireNonNull(method);
+        this.uri = requireNonNull(uri);
+        this.headers = headers
+                .entrySet()
+                .stream()
+                .collect(toUnmodifiableMap(Map.Entry::getKey, e -> List.copyOf(e.getValue())));
+        this.body = requireNonNull(body);
+        this.statusCode = statusCode;
+        this.responseLength = responseLength;
+        this.responseChecksum = responseChecksum;
+        this.duration = duration;
+    }
+
+    /**
+     * Returns the arrival time of the request in nanoseconds since the epoch.
+     * The resolution is nanoseconds, but the accuracy is only milliseconds between separate captures.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    /**
+     * Returns the raw request URI, i.e. the path and the query, if any.
+     */
+    public String uri() {
+        return uri;
+    }
+
+    /**
+     * Returns the captured request headers.
+     */
+    public Map<String, List<String>> headers() {
+        return headers;
+    }
+
+    /**
+     * Returns a copy of the request body as far as it has been read by the action.
+     */
+    public byte[] body() {
+        return body.clone();
+    }
+
+    int bodyLength() {
+        return body.length;
+    }
+
+    /**
+     * Returns the status code of the response or zero if no response has been sent.
+     */
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public long responseLength() {
+        return responseLength;
+    }
+
+    /**
+     * Returns the CRC-32 checksum of the response body.
+     */
+    public int responseChecksum() {
+        return responseChecksum;
+    }
+
+    /**
+     * Returns the number of nanoseconds between the arrival of the request and the completion of the exchange.
+     */
+    public long duration() {
+        return duration;
+    }
+
+    public CapturedExchange withUri(String uri) {
+        return new CapturedExchange(timestamp, method, uri, headers, body, statusCode, responseLength,
+                responseChecksum, duration);
+    }
+
+    public CapturedExchange withHeaders(Map<String, List<String>> headers) {
+        return new CapturedExchange(timestamp, method, uri, headers, body, statusCode, responseLength,
+                responseChecksum, duration);
+    }
+
+    public CapturedExchange withBody(byte[] body) {
+        return new CapturedExchange(timestamp, method, uri, headers, body.clone(), statusCode, responseLength,
+                responseChecksum, duration);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import com.sun.net.httpserver.Headers;
+import example.web.framework.spi.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.security.Principal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * An exchange which copies the request body as far as it gets read and computes the length and checksum of the
+ * response body, so that it can pass a {@link CapturedExchange} to a {@link TrafficRecorder} when it gets closed.
+ * Files get transferred through the response body stream, so they are not written zero-copy while being captured.
+ */
+final class CapturingExchange implements HttpExchange {
+
+    private final HttpExchange exchange;
+    private final TrafficRecorder recorder;
+    private final long start;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final CRC32 checksum = new CRC32();
+    private boolean truncated;
+    private long responseLength;
+    private volatile int statusCode;
+    private InputStream requestBody;
+    private OutputStream responseBody;
+
+    CapturingExchange(final HttpExchange exchange, final TrafficRecorder recorder, final long start) {
+        this.exchange = exchange;
+        this.recorder = recorder;
+        this.start = start;
+    }
+
+    @Override
+    public String contextPath() {
+        return exchange.contextPath();
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return exchange.localAddress();
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return exchange.remoteAddress();
+    }
+
+    @Override
+    public Optional<Principal> principal() {
+        return exchange.principal();
+    }
+
+    @Override
+    public String protocol() {
+        return exchange.protocol();
+    }
+
+    @Override
+    public String requestMethod() {
+        return exchange.requestMethod();
+    }
+
+    @Override
+    public URI requestURI() {
+        return exchange.requestURI();
+    }
+
+    @Override
+    public Headers requestHeaders() {
+        return exchange.requestHeaders();
+    }
+
+    @Override
+    public synchronized InputStream requestBody() {
+        if (null == requestBody) {
+            requestBody = new FilterInputStream(exchange.requestBody()) {
+
+                @Override
+                public int read() throws IOException {
+                    final int b = super.read();
+                    if (0 <= b) {
+                        capture(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int n = super.read(b, off, len);
+                    if (0 < n) {
+                        capture(b, off, n);
+                    }
+                    return n;
+                }
+
+                @Override
+                public long skip(final long n) throws IOException {
+                    final var buffer = new byte[(int) Math.min(n, 8 * 1024)];
+                    long remaining = n;
+                    while (0 < remaining) {
+                        final int read = read(buffer, 0, (int) Math.min(remaining, buffer.length));
+                        if (read < 0) {
+                            break;
+                        }
+                        remaining -= read;
+                    }
+                    return n - remaining;
+                }
+
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+            };
+        }
+        return requestBody;
+    }
+
+    private synchronized void capture(final int b) {
+        if (body.size() < recorder.capture().maxBodySize()) {
+            body.write(b);
+        } else {
+            truncated = true;
+        }
+    }
+
+    private synchronized void capture(final byte[] b, final int off, final int len) {
+        final int n = Math.min(len, recorder.capture().maxBodySize() - body.size());
+        body.write(b, off, n);
+        if (n < len) {
+            truncated = true;
+        }
+    }
+
+    @Override
+    public Headers responseHeaders() {
+        return exchange.responseHeaders();
+    }
+
+    @Override
+    public void sendResponseHeaders(final int statusCode, final long responseLength) throws IOException {
+        exchange.sendResponseHeaders(statusCode, responseLength);
+        this.statusCode = statusCode;
+    }
+
+    @Override
+    public boolean responseHeadersSent() {
+        return exchange.responseHeadersSent();
+    }
+
+    @Override
+    public synchronized OutputStream responseBody() {
+        if (null == responseBody) {
+            responseBody = new FilterOutputStream(exchange.responseBody()) {
+
+                @Override
+                public void write(final int b) throws IOException {
+                    out.write(b);
+                    count(b);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    out.write(b, off, len);
+                    count(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+        return responseBody;
+    }
+
+    private synchronized void count(final int b) {
+        checksum.update(b);
+        responseLength++;
+    }
+
+    private synchronized void count(final byte[] b, final int off, final int len) {
+        checksum.update(b, off, len);
+        responseLength += len;
+    }
+
+    @Override
+    public void transferFrom(final FileChannel file, final long position, final long count) throws IOException {
+        HttpExchange.super.transferFrom(file, position, count);
+    }
+
+    @Override
+    public boolean tryWrite(final byte[] b) throws IOException {
+        if (!exchange.tryWrite(b)) {
+            return false;
+        }
+        count(b, 0, b.length);
+        return true;
+    }
+
+    @Override
+    public boolean inIoThread() {
+        return exchange.inIoThread();
+    }
+
+    @Override
+    public Map<String, Object> attributes() {
+        return exchange.attributes();
+    }
+
+    /**
+     * Passes the captured exchange to the recorder unless the request body has been truncated and closes the
+     * underlying exchange.
+     * Only the first call captures the exchange.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            final var captured = captured();
+            if (null != captured) {
+                recorder.record(captured);
+            }
+        }
+        exchange.close();
+    }
+
+    private synchronized CapturedExchange captured() {
+        if (truncated) {
+            return null;
+        }
+        final var requestHeaders = exchange.requestHeaders();
+        final var headers = new LinkedHashMap<String, List<String>>();
+        for (final var name : recorder.capture().headers()) {
+            final var values = requestHeaders.get(name);
+            if (null != values) {
+                headers.put(name, values);
+            }
+        }
+        return new CapturedExchange(recorder.timestamp(start), exchange.requestMethod(),
+                exchange.requestURI().toString(), headers, body.toByteArray(), statusCode, responseLength,
+                (int) checksum.getValue(), System.nanoTime() - start);
+    }
+}
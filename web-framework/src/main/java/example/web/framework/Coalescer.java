@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import com.sun.net.httpserver.Headers;
+import example.web.framework.spi.HttpExchange;
+import global.namespace.fun.io.api.function.XFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent identical requests into a single execution whose response gets shared by all of them.
+ * Requests are identical if they have the same method, path, query and values of the configured vary headers.
+ * Nothing is retained after an execution completes, so this is not a cache.
+ */
+final class Coalescer {
+
+    private final List<String> varyHeaders;
+    private final Map<String, CompletableFuture<Shared>> inFlight = new ConcurrentHashMap<>();
+
+    Coalescer(final List<String> varyHeaders) {
+        this.varyHeaders = List.copyOf(varyHeaders);
+    }
+
+    /**
+     * Returns the number of executions in flight.
+     */
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Applies the given function to the given exchange unless there is already an execution in flight for an
+     * identical request.
+     * In this case, the response headers of the execution in flight get copied to the given exchange and its response
+     * is returned, or its exception is thrown.
+     */
+    BufferedResponse apply(
+            final HttpExchange exchange,
+            final XFunction<? super HttpExchange, ? extends BufferedResponse> execution
+    ) throws Exception {
+        final var key = key(exchange);
+        final var future = new CompletableFuture<Shared>();
+        final var existing = inFlight.putIfAbsent(key, future);
+        if (null != existing) {
+            final Shared shared;
+            try {
+                shared = existing.get();
+            } catch (ExecutionException e) {
+                final var cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+            final var headers = exchange.responseHeaders();
+            shared.headers.forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+            return shared.response;
+        }
+        try {
+            final BufferedResponse response = execution.apply(exchange);
+            inFlight.remove(key, future);
+            future.complete(new Shared(exchange.responseHeaders(), response));
+            return response;
+        } catch (Throwable t) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(t);
+            throw t;
+        }
+    }
+
+    private String key(final HttpExchange exchange) {
+        final var uri = exchange.requestURI();
+        final var key = new StringBuilder(128)
+                .append(exchange.requestMethod())
+                .append(' ')
+                .append(uri.getRawPath());
+        final var query = uri.getRawQuery();
+        if (null != query) {
+            key.append('?').append(query);
+        }
+        final var headers = exchange.requestHeaders();
+        for (final var name : varyHeaders) {
+            key.append('\n').append(name).append(':');
+            final var values = headers.get(name);
+            if (null != values) {
+                key.append(String.join(",", values));
+            }
+        }
+        return key.toString();
+    }
+
+    private static final class Shared {
+
+        final Headers headers = new Headers();
+        final BufferedResponse response;
+
+        Shared(final Headers headers, final BufferedResponse response) {
+            headers.forEach((name, values) -> this.headers.put(name, List.copyOf(values)));
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Limits the number of requests in flight to a value which adapts to the observed round-trip time (RTT), so that
+ * neither cores are wasted nor queues build up.
+ * Requests beyond the limit get rejected with the status code {@code 503} without wiring a controller.
+ * <p>
+ * The algorithm is gradient-based:
+ * The RTTs of the requests are averaged over windows of {@link #WINDOW_SIZE} samples.
+ * At the end of each window, the limit gets multiplied by the gradient {@code tolerance * noLoadRtt / sampleRtt},
+ * clamped to the interval {@code [0.5, 1]}, and increased by its square root to leave some room for queueing and for
+ * growth.
+ * The limit does not grow while less than half of it is in use.
+ * Requests which exceed their {@link Deadline} reduce the limit by ten percent immediately.
+ * <p>
+ * The no-load RTT is estimated as the minimum of the window averages.
+ * Because the RTT can only be observed without queueing when the load is low, the limit gets reduced to a fraction of
+ * itself for one probe window every {@link #PROBE_INTERVAL} windows, and whenever it has dropped to its minimum.
+ * The minimum RTT of the requests admitted during the probe window replaces the estimate, so that it can follow a
+ * permanent change of the backend in both directions.
+ * <p>
+ * Concurrency limits are thread-safe and can be shared by multiple routes.
+ * In order to limit the whole server, override the method {@link HttpServer#concurrencyLimit()}.
+ */
+public final class ConcurrencyLimit {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+    public static final int DEFAULT_MIN_LIMIT = 1;
+
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+
+    public static final double DEFAULT_TOLERANCE = 2;
+
+    /**
+     * The number of RTT samples per window.
+     */
+    public static final int WINDOW_SIZE = 10;
+
+    /**
+     * The number of windows between probe windows.
+     */
+    public static final int PROBE_INTERVAL = 100;
+
+    /**
+     * The maximum number of changes in the {@linkplain #history() history}.
+     */
+    public static final int HISTORY_SIZE = 100;
+
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final LongSupplier clock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejections = new AtomicLong();
+    private final ArrayDeque<Change> history = new ArrayDeque<>(HISTORY_SIZE);
+    private volatile int limit;
+    private volatile long noLoadRtt;
+    private long sum;
+    private int samples;
+    private int maxInFlight;
+    private int windows;
+    private boolean probing;
+    private long probeStart;
+    private long probeRtt;
+    private int probeLimit;
+
+    private ConcurrencyLimit(
+            final String name,
+            final int initialLimit,
+            final int minLimit,
+            final int maxLimit,
+            final double tolerance,
+            final LongSupplier clock
+    ) {
+        this.name = requireNonNull(name);
+        if (minLimit <= 0) {
+            throw new IllegalArgumentException("`minLimit` needs to be positive.");
+        }
+        if (maxLimit < minLimit) {
+            throw new IllegalArgumentException("`maxLimit` must not be less than `minLimit`.");
+        }
+        if (initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("`initialLimit` needs to be between `minLimit` and `maxLimit`.");
+        }
+        if (!(1 <= tolerance)) {
+            throw new IllegalArgumentException("`tolerance` must not be less than one.");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.clock = requireNonNull(clock);
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Returns a new concurrency limit with the given name and the default settings.
+     */
+    public static ConcurrencyLimit of(String name) {
+        return of(name, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Returns a new concurrency limit with the given name, initial, minimum and maximum limit and the default
+     * tolerance.
+     */
+    public static ConcurrencyLimit of(String name, int initialLimit, int minLimit, int maxLimit) {
+        return of(name, initialLimit, minLimit, maxLimit, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Returns a new concurrency limit with the given name, initial, minimum and maximum limit and tolerance.
+     *
+     * @param tolerance the factor by which the sample RTT may exceed the no-load RTT before the limit gets reduced,
+     *                  e.g. {@code 2}.
+     */
+    public static ConcurrencyLimit of(String name, int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        return of(name, initialLimit, minLimit, maxLimit, tolerance, System::nanoTime);
+    }
+
+    /**
+     * Like {@link #of(String, int, int, int, double)}, but uses the given clock instead of {@link System#nanoTime()},
+     * e.g. for simulations.
+     */
+    static ConcurrencyLimit of(
+            String name,
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            double tolerance,
+            LongSupplier clock
+    ) {
+        return new ConcurrencyLimit(name, initialLimit, minLimit, maxLimit, tolerance, clock);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the current limit, which is temporarily reduced during a probe window.
+     */
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * Returns the number of requests in flight.
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the estimated no-load RTT or {@link Duration#ZERO} if there has not been a full window of samples yet.
+     */
+    public Duration noLoadRtt() {
+        return Duration.ofNanos(noLoadRtt);
+    }
+
+    /**
+     * Returns the total number of rejected requests.
+     */
+    public long rejections() {
+        return rejections.get();
+    }
+
+    /**
+     * Returns the most recent changes of the limit, oldest first.
+     */
+    public synchronized List<Change> history() {
+        return List.copyOf(history);
+    }
+
+    /**
+     * Acquires a permit if the number of requests in flight is less than the limit.
+     * If this method returns {@code true}, then exactly one of the methods {@link #onSuccess(long)},
+     * {@link #onDropped()} or {@link #onIgnore()} must get called later.
+     *
+     * @return {@code false} if the request has been rejected.
+     */
+    boolean tryAcquire() {
+        for (int current; (current = inFlight.get()) < limit; ) {
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        rejections.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Releases a permit and records the given RTT of the request in nanoseconds.
+     */
+    void onSuccess(final long rtt) {
+        final long now = clock.getAsLong();
+        final int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (probing) {
+                if (now - rtt < probeStart) {
+                    return; // admitted before the probe window
+                }
+                probeRtt = Math.min(probeRtt, rtt);
+                if (++samples < WINDOW_SIZE) {
+                    return;
+                }
+                samples = 0;
+                probing = false;
+                noLoadRtt = Math.max(1, probeRtt);
+                limit = probeLimit;
+                return;
+            }
+            maxInFlight = Math.max(maxInFlight, current);
+            sum += rtt;
+            if (++samples < WINDOW_SIZE) {
+                return;
+            }
+            final long sampleRtt = sum / samples;
+            final int usage = maxInFlight;
+            sum = 0;
+            samples = 0;
+            maxInFlight = 0;
+            if (0 == noLoadRtt || sampleRtt < noLoadRtt) {
+                noLoadRtt = Math.max(1, sampleRtt);
+            }
+            final var gradient = Math.max(0.5, Math.min(1, tolerance * noLoadRtt / sampleRtt));
+            final int oldLimit = limit;
+            if (gradient < 1 || oldLimit / 2 <= usage) {
+                final var newLimit = oldLimit * gradient + Math.sqrt(oldLimit);
+                update((int) Math.round(oldLimit * (1 - SMOOTHING) + newLimit * SMOOTHING), sampleRtt);
+            }
+            if (0 == ++windows % PROBE_INTERVAL || minLimit == limit && gradient < 1) {
+                probe(now);
+            }
+        }
+    }
+
+    /**
+     * Reduces the limit for one window so that queues can drain and the no-load RTT can be observed.
+     */
+    private void probe(final long now) {
+        windows = 0;
+        probing = true;
+        probeStart = now;
+        probeRtt = Long.MAX_VALUE;
+        probeLimit = limit;
+        limit = Math.max(minLimit, (int) (limit / (2 * tolerance)));
+    }
+
+    /**
+     * Releases a permit and reduces the limit because the request has been dropped, e.g. because it has exceeded its
+     * deadline.
+     */
+    void onDropped() {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            if (probing) {
+                probeLimit = Math.max(minLimit, (int) (probeLimit * BACKOFF));
+            } else {
+                update((int) (limit * BACKOFF), 0);
+            }
+        }
+    }
+
+    /**
+     * Releases a permit without recording a sample, e.g. because the request has been rejected by a bulkhead.
+     */
+    void onIgnore() {
+        inFlight.decrementAndGet();
+    }
+
+    private void update(int newLimit, final long sampleRtt) {
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if (newLimit != limit) {
+            limit = newLimit;
+            if (HISTORY_SIZE == history.size()) {
+                history.removeFirst();
+            }
+            history.addLast(new Change(Instant.now(), newLimit, sampleRtt, noLoadRtt));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimit[name=" + name + ", limit=" + limit() + ", inFlight=" + inFlight() +
+                ", noLoadRtt=" + noLoadRtt() + ", rejections=" + rejections() + "]";
+    }
+
+    /**
+     * A change of the limit.
+     */
+    public static final class Change {
+
+        private final Instant time;
+        private final int limit;
+        private final long sampleRtt;
+        private final long noLoadRtt;
+
+        private Change(final Instant time, final int limit, final long sampleRtt, final long noLoadRtt) {
+            this.time = time;
+            this.limit = limit;
+            this.sampleRtt = sampleRtt;
+            this.noLoadRtt = noLoadRtt;
+        }
+
+        public Instant time() {
+            return time;
+        }
+
+        /**
+         * Returns the new limit.
+         */
+        public int limit() {
+            return limit;
+        }
+
+        /**
+         * Returns the average RTT of the window which caused this change or {@link Duration#ZERO} if it has been
+         * caused by a dropped request.
+         */
+        public Duration sampleRtt() {
+            return Duration.ofNanos(sampleRtt);
+        }
+
+        public Duration noLoadRtt() {
+            return Duration.ofNanos(noLoadRtt);
+        }
+
+        @Override
+        public String toString() {
+            return "Change[time=" + time + ", limit=" + limit + ", sampleRtt=" + sampleRtt() + ", noLoadRtt=" +
+                    noLoadRtt() + "]";
+        }
+    }
+}
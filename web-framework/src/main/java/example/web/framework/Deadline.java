@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import example.web.framework.spi.HttpExchange;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounds the time for processing requests to the routes assigned to it, including any time spent queuing for a
+ * bulkhead.
+ * If a request exceeds the timeout before its response headers have been sent, then the thread executing its action
+ * gets interrupted and the status code {@code 504} gets sent to the client.
+ * Deadlines are thread-safe, but in order to record the timeouts per route, each route should have its own deadline.
+ */
+public final class Deadline {
+
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+        final var thread = new Thread(task, "deadline-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Sends the status code 504 and closes the exchange, which may block, so that the timer never gets delayed.
+    // The bulkhead of the route is not used for this because it may be exhausted by the requests which have timed out.
+    private static final ThreadPoolExecutor responder;
+
+    private static final ExceptionLog log =
+            new ExceptionLog(LoggerFactory.getLogger(Deadline.class), ExceptionLog.DEFAULT_SAMPLING_INTERVAL);
+
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+        final var threads = new AtomicInteger();
+        final var size = Math.max(2, Runtime.getRuntime().availableProcessors());
+        responder = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+            final var thread = new Thread(task, "deadline-responder-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        responder.allowCoreThreadTimeOut(true);
+    }
+
+    private final Duration timeout;
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private Deadline(final Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("`timeout` needs to be positive.");
+        }
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns a new deadline with the given timeout.
+     */
+    public static Deadline of(Duration timeout) {
+        return new Deadline(requireNonNull(timeout));
+    }
+
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the total number of requests which have exceeded this deadline.
+     */
+    public long timeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Starts the timer for the given exchange and returns an exchange which guards it against concurrent use by the
+     * timer.
+     */
+    TimedExchange start(final HttpExchange exchange) {
+        final var timed = new TimedExchange(exchange, System.nanoTime() + timeout.toNanos(), () -> {
+            timeouts.incrementAndGet();
+            log.warn("Deadline exceeded for {} {}.", exchange.requestMethod(), exchange.requestURI());
+        });
+        timed.schedule(timer, responder, timeout);
+        return timed;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[timeout=" + timeout + ", timeouts=" + timeouts() + "]";
+    }
+}
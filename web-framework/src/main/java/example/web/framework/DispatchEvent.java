@@ -0,0 +1,15 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("example.web.framework.Dispatch")
+@Label("HTTP Dispatch")
+@Description("Dispatches a request to its route and sends the response, including any time spent queuing for a bulkhead.")
+final class DispatchEvent extends HttpEvent {
+}
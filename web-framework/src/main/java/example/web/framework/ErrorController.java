@@ -15,7 +15,7 @@ interface ErrorController extends HttpController {
 
     default int methodNotAllowed() {
         responseHeaders().add("Allow", routes()
-                .get(context().getPath())
+                .get(contextPath())
                 .keySet()
                 .stream()
                 .map(HttpMethod::name)
@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+/**
+ * Determines how the server responds to errors unless a custom error handler has been configured.
+ */
+public enum ErrorMode {
+
+    /**
+     * Error responses get rendered by wiring a controller for each error.
+     * The response body for the status code {@code 500} contains the stack trace and every exception gets logged.
+     */
+    DEVELOPMENT,
+
+    /**
+     * Error responses get served from pre-rendered byte arrays without wiring a controller.
+     * The response body for the status code {@code 500} does not contain the stack trace and exceptions get logged
+     * at most once per sampling interval and exception type, along with the number of suppressed exceptions.
+     */
+    PRODUCTION
+}
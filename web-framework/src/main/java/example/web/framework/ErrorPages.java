@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import example.web.framework.spi.HttpExchange;
+
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Pre-rendered error responses for the production error mode and for rejecting requests which cannot be served in any
+ * mode.
+ */
+final class ErrorPages {
+
+    static final BufferedResponse NOT_FOUND =
+            html(404, "<h1>404 Not Found</h1>No handler found for request URI.");
+
+    static final BufferedResponse METHOD_NOT_ALLOWED =
+            html(405, "<h1>405 Not Allowed</h1>Request method not allowed for this request URI.");
+
+    static final BufferedResponse NOT_ACCEPTABLE =
+            html(406, "<h1>406 Not Acceptable</h1>No acceptable media type.");
+
+    static final BufferedResponse PAYLOAD_TOO_LARGE =
+            html(413, "<h1>413 Payload Too Large</h1>Request body too large.");
+
+    static final BufferedResponse INTERNAL_SERVER_ERROR =
+            html(500, "<h1>500 Internal Server Error</h1>");
+
+    static final BufferedResponse NOT_IMPLEMENTED =
+            html(501, "<h1>501 Not Implemented</h1>Unknown request method.");
+
+    private static BufferedResponse html(int statusCode, String body) {
+        return new BufferedResponse(statusCode, body.getBytes(UTF_8));
+    }
+
+    static void send(final HttpExchange exchange, final BufferedResponse page) throws IOException {
+        exchange.responseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        page.sendTo(exchange);
+    }
+
+    private ErrorPages() {
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import example.web.framework.spi.HttpExchange;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Broadcasts server-sent events to the exchanges subscribed to it by routes with {@code events(hub)}.
+ * Each event is serialized once and the same bytes are fanned out to all subscribers.
+ * Each subscriber has a bounded queue which is drained by a small pool of writer threads, so a hub can serve many
+ * thousands of subscribers without a thread per subscriber.
+ * If the queue of a slow subscriber is full or the engine has too much output pending for it, then the
+ * {@link Overflow} policy applies, so the writer threads never block on a slow subscriber unless the engine does not
+ * buffer output, like the JDK engine.
+ * Idle subscribers receive a heartbeat comment periodically, which keeps intermediaries from closing the connection
+ * and detects disconnected clients.
+ * Hubs are thread-safe.
+ */
+public final class EventHub implements AutoCloseable {
+
+    /**
+     * The policy for events which don't fit into the queue of a slow subscriber.
+     */
+    public enum Overflow {
+
+        /**
+         * Drops the event for the slow subscriber only.
+         */
+        DROP,
+
+        /**
+         * Disconnects the slow subscriber.
+         */
+        DISCONNECT
+    }
+
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(UTF_8);
+
+    private final String name;
+    private final int queueSize;
+    private final Overflow overflow;
+    private final ScheduledThreadPoolExecutor writers;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+
+    private EventHub(
+            final String name,
+            final int writerThreads,
+            final int queueSize,
+            final Overflow overflow,
+            final Duration heartbeatInterval
+    ) {
+        this.name = requireNonNull(name);
+        if (writerThreads <= 0) {
+            throw new IllegalArgumentException("`writerThreads` needs to be positive.");
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("`queueSize` needs to be positive.");
+        }
+        if (heartbeatInterval.isNegative() || heartbeatInterval.isZero()) {
+            throw new IllegalArgumentException("`heartbeatInterval` needs to be positive.");
+        }
+        this.queueSize = queueSize;
+        this.overflow = requireNonNull(overflow);
+        final var threads = new AtomicInteger();
+        writers = new ScheduledThreadPoolExecutor(writerThreads, task -> {
+            final var thread = new Thread(task, "events-" + name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var interval = heartbeatInterval.toNanos();
+        writers.scheduleAtFixedRate(this::heartbeat, interval, interval, NANOSECONDS);
+    }
+
+    /**
+     * Returns a new event hub with the given name, maximum number of queued events per subscriber and overflow policy.
+     * The hub has one writer thread per available processor and sends a heartbeat to idle subscribers every 15
+     * seconds.
+     */
+    public static EventHub of(String name, int queueSize, Overflow overflow) {
+        return of(name, Runtime.getRuntime().availableProcessors(), queueSize, overflow, Duration.ofSeconds(15));
+    }
+
+    /**
+     * Returns a new event hub with the given name, number of writer threads, maximum number of queued events per
+     * subscriber, overflow policy and heartbeat interval.
+     */
+    public static EventHub of(
+            String name,
+            int writerThreads,
+            int queueSize,
+            Overflow overflow,
+            Duration heartbeatInterval
+    ) {
+        return new EventHub(name, writerThreads, queueSize, overflow, requireNonNull(heartbeatInterval));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the number of current subscribers.
+     */
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    /**
+     * Returns the total number of published events.
+     */
+    public long published() {
+        return published.get();
+    }
+
+    /**
+     * Returns the total number of events dropped for slow subscribers.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the total number of subscribers which have been disconnected because they were too slow, their
+     * connection failed or this hub has been closed.
+     */
+    public long disconnected() {
+        return disconnected.get();
+    }
+
+    /**
+     * Publishes an unnamed event with the given data to all subscribers.
+     */
+    public void publish(String data) {
+        publish(null, data);
+    }
+
+    /**
+     * Publishes an event with the given type and data to all subscribers.
+     * If the type is {@code null}, then the event is unnamed.
+     * If the data spans multiple lines, then each line is sent as a separate data field.
+     */
+    public void publish(final String event, final String data) {
+        final var frame = new StringBuilder(data.length() + 32);
+        if (null != event) {
+            frame.append("event: ").append(event).append('\n');
+        }
+        for (final var line : data.split("\r\n|\r|\n", -1)) {
+            frame.append("data: ").append(line).append('\n');
+        }
+        frame.append('\n');
+        final var bytes = frame.toString().getBytes(UTF_8);
+        published.incrementAndGet();
+        for (final var subscriber : subscribers) {
+            subscriber.offer(bytes);
+        }
+    }
+
+    /**
+     * Sends the response headers for an event stream and subscribes the given exchange to this hub.
+     * The exchange gets closed when it's disconnected or this hub gets closed.
+     */
+    void subscribe(final HttpExchange exchange) throws IOException {
+        final var headers = exchange.responseHeaders();
+        headers.set("Content-Type", "text/event-stream; charset=UTF-8");
+        headers.set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        final var subscriber = new Subscriber(exchange);
+        subscribers.add(subscriber);
+        subscriber.offer(HEARTBEAT);
+    }
+
+    private void heartbeat() {
+        for (final var subscriber : subscribers) {
+            if (subscriber.queue.isEmpty()) {
+                subscriber.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    /**
+     * Disconnects all subscribers and stops the writer threads.
+     */
+    @Override
+    public void close() {
+        for (final var subscriber : subscribers) {
+            subscriber.disconnect();
+        }
+        writers.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "EventHub[name=" + name + ", subscribers=" + subscribers() + ", published=" + published() +
+                ", dropped=" + dropped() + ", disconnected=" + disconnected() + "]";
+    }
+
+    /**
+     * Drains its queue on a writer thread whenever it's not empty, so that at most one writer thread at a time writes
+     * to the exchange.
+     */
+    private final class Subscriber implements Runnable {
+
+        final HttpExchange exchange;
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueSize);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean closing;
+
+        Subscriber(final HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        void offer(final byte[] frame) {
+            if (!queue.offer(frame)) {
+                if (Overflow.DROP == overflow) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                closing = true;
+            }
+            schedule();
+        }
+
+        void disconnect() {
+            closing = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!closing) {
+                try {
+                    for (byte[] frame; null != (frame = queue.poll()); ) {
+                        if (!exchange.tryWrite(frame)) {
+                            if (Overflow.DROP == overflow) {
+                                dropped.incrementAndGet();
+                            } else {
+                                closing = true;
+                                break;
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    LoggerFactory.getLogger(EventHub.class).debug("Cannot send event:", e);
+                    closing = true;
+                }
+            }
+            if (closing) {
+                close();
+                return;
+            }
+            scheduled.set(false);
+            // Recheck because offer() or disconnect() cannot schedule this subscriber again while it's still scheduled:
+            if (closing || !queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void close() {
+            if (subscribers.remove(this)) {
+                disconnected.incrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+}
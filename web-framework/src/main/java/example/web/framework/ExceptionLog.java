@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs exceptions at most once per sampling interval and exception type.
+ * The number of exceptions which have been suppressed since the last log entry gets reported with the next log entry
+ * for the same exception type.
+ * Warnings get sampled the same way, but per message format.
+ * A sampling interval of zero disables sampling.
+ */
+final class ExceptionLog {
+
+    static final Duration DEFAULT_SAMPLING_INTERVAL = Duration.ofSeconds(10);
+
+    private final Logger logger;
+    private final long intervalNanos;
+    private final Map<Object, Sample> samples = new ConcurrentHashMap<>();
+
+    ExceptionLog(final Logger logger, final Duration samplingInterval) {
+        this.logger = logger;
+        this.intervalNanos = samplingInterval.toNanos();
+    }
+
+    void error(final String message, final Throwable t) {
+        final long suppressed = sample(t.getClass());
+        if (0 < suppressed) {
+            logger.error(message + " ({} similar exceptions suppressed)", suppressed, t);
+        } else if (0 == suppressed) {
+            logger.error(message, t);
+        }
+    }
+
+    void warn(final String format, final Object... arguments) {
+        final long suppressed = sample(format);
+        if (0 < suppressed) {
+            final var withSuppressed = Arrays.copyOf(arguments, arguments.length + 1);
+            withSuppressed[arguments.length] = suppressed;
+            logger.warn(format + " ({} similar warnings suppressed)", withSuppressed);
+        } else if (0 == suppressed) {
+            logger.warn(format, arguments);
+        }
+    }
+
+    /**
+     * Returns the number of log entries which have been suppressed for the given key since its last log entry or -1 if
+     * the current log entry needs to be suppressed, too.
+     */
+    private long sample(final Object key) {
+        if (0 == intervalNanos) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        final var sample = samples.computeIfAbsent(key, k -> new Sample(now - intervalNanos));
+        final long last = sample.lastLogged.get();
+        if (now - last >= intervalNanos && sample.lastLogged.compareAndSet(last, now)) {
+            return sample.suppressed.getAndSet(0);
+        } else {
+            sample.suppressed.incrementAndGet();
+            return -1;
+        }
+    }
+
+    private static final class Sample {
+
+        final AtomicLong lastLogged;
+        final AtomicLong suppressed = new AtomicLong();
+
+        Sample(final long lastLogged) {
+            this.lastLogged = new AtomicLong(lastLogged);
+        }
+    }
+}
@@ -10,10 +10,12 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static java.lang.Float.parseFloat;
+import static java.util.Locale.ENGLISH;
 import static java.util.Locale.forLanguageTag;
 import static java.util.regex.Pattern.CASE_INSENSITIVE;
 import static java.util.regex.Pattern.compile;
@@ -28,6 +30,9 @@ final class HeadersFun {
     private static final Pattern QVALUE_PATTERN =
             compile("(?<languageRange>\\p{Alpha}{1,8}(?:-\\p{Alnum}{1,8})*|\\*)\\s*;\\s*q=(?<qvalue>0(?:\\.\\d{0,3})?|1(?:\\.0{0,3})?)", CASE_INSENSITIVE);
 
+    private static final Pattern MEDIA_RANGE_QVALUE_PATTERN =
+            compile("q\\s*=\\s*(0(?:\\.\\d{0,3})?|1(?:\\.0{0,3})?)", CASE_INSENSITIVE);
+
     static List<Locale> acceptLanguages(Headers headers) {
         return Stream.ofNullable(headers.getFirst("Accept-Language"))
                 .flatMap(l -> Stream.of(l.split(",")))
@@ -41,6 +46,62 @@ final class HeadersFun {
                 .collect(toUnmodifiableList());
     }
 
+    /**
+     * Returns the first of the given media types with the highest quality according to the {@code Accept} header or
+     * nothing if none of them is acceptable.
+     * If there is no {@code Accept} header, then the first of the given media types is returned.
+     */
+    static Optional<String> acceptedMediaType(final Headers headers, final List<String> mediaTypes) {
+        final var accept = Stream
+                .ofNullable(headers.get("Accept"))
+                .flatMap(List::stream)
+                .flatMap(a -> Stream.of(a.split(",")))
+                .map(String::trim)
+                .filter(r -> !r.isEmpty())
+                .collect(toUnmodifiableList());
+        if (accept.isEmpty()) {
+            return mediaTypes.stream().findFirst();
+        }
+        String best = null;
+        float bestQuality = 0;
+        for (final var mediaType : mediaTypes) {
+            final float quality = quality(accept, mediaType);
+            if (bestQuality < quality) {
+                best = mediaType;
+                bestQuality = quality;
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * Returns the quality of the most specific media range which matches the given media type.
+     * See https://tools.ietf.org/html/rfc7231#section-5.3.2 .
+     */
+    private static float quality(final List<String> accept, final String mediaType) {
+        int bestSpecificity = -1;
+        float quality = 0;
+        for (final var range : accept) {
+            final var parameters = range.split(";");
+            final var r = parameters[0].trim().toLowerCase(ENGLISH);
+            final int specificity = r.equals(mediaType) ? 2
+                    : r.equals("*/*") || r.equals("*") ? 0
+                    : r.endsWith("/*") && mediaType.startsWith(r.substring(0, r.length() - 1)) ? 1
+                    : -1;
+            if (bestSpecificity < specificity) {
+                bestSpecificity = specificity;
+                quality = 1;
+                for (int i = 1; i < parameters.length; i++) {
+                    final var m = MEDIA_RANGE_QVALUE_PATTERN.matcher(parameters[i].trim());
+                    if (m.matches()) {
+                        quality = parseFloat(m.group(1));
+                    }
+                }
+            }
+        }
+        return quality;
+    }
+
     private HeadersFun() {
     }
 }
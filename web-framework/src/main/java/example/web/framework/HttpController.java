@@ -6,21 +6,24 @@ package example.web.framework;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.net.httpserver.Headers;
-import com.sun.net.httpserver.HttpContext;
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpPrincipal;
+import example.web.framework.json.JsonWritable;
+import example.web.framework.json.JsonWriters;
+import example.web.framework.spi.HttpExchange;
 import global.namespace.fun.io.api.Encoder;
 import global.namespace.fun.io.bios.BIOS;
 import global.namespace.fun.io.jackson.Jackson;
 import global.namespace.neuron.di.java.Caching;
 import global.namespace.neuron.di.java.Neuron;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.security.Principal;
+import java.time.Duration;
 import java.util.*;
 
 import static global.namespace.neuron.di.java.CachingStrategy.NOT_THREAD_SAFE;
@@ -32,7 +35,8 @@ import static java.util.stream.Collectors.toUnmodifiableMap;
 
 /**
  * Provides access to the HTTP request/response model.
- * This interface leaks types from the class {@link HttpExchange}, so don't use it in production.
+ * This interface leaks the class {@link Headers} from the package {@code com.sun.net.httpserver}, so don't use it in
+ * production.
  */
 @SuppressWarnings("unused")
 @Neuron
@@ -44,7 +48,7 @@ public interface HttpController {
     HttpExchange exchange();
 
     /**
-     * @see HttpExchange#getResponseBody()
+     * Returns the buffered response body.
      */
     OutputStream responseBody();
 
@@ -55,59 +59,84 @@ public interface HttpController {
     Map<String, Map<HttpMethod, HttpRoute<?>>> routes();
 
     /**
-     * @see HttpExchange#getHttpContext()
+     * @see HttpExchange#contextPath()
      */
     @Caching(NOT_THREAD_SAFE)
-    default HttpContext context() {
-        return exchange().getHttpContext();
+    default String contextPath() {
+        return exchange().contextPath();
     }
 
     /**
-     * @see HttpExchange#getLocalAddress()
+     * @see HttpExchange#localAddress()
      */
     @Caching(NOT_THREAD_SAFE)
     default InetSocketAddress localAddress() {
-        return exchange().getLocalAddress();
+        return exchange().localAddress();
     }
 
     /**
-     * @see HttpExchange#getPrincipal()
+     * @see HttpExchange#principal()
      */
     @Caching(NOT_THREAD_SAFE)
-    default HttpPrincipal principal() {
-        return exchange().getPrincipal();
+    default Optional<Principal> principal() {
+        return exchange().principal();
     }
 
     /**
-     * @see HttpExchange#getProtocol()
+     * @see HttpExchange#protocol()
      */
     @Caching(NOT_THREAD_SAFE)
     default String protocol() {
-        return exchange().getProtocol();
+        return exchange().protocol();
     }
 
     /**
-     * @see HttpExchange#getRemoteAddress()
+     * @see HttpExchange#remoteAddress()
      */
     @Caching(NOT_THREAD_SAFE)
     default InetSocketAddress remoteAddress() {
-        return exchange().getRemoteAddress();
+        return exchange().remoteAddress();
     }
 
     /**
-     * @see HttpExchange#getRequestBody()
+     * Returns the policy for reading the request body.
+     * By default, this is delegated to {@link HttpServer#requestBodyPolicy()}.
+     */
+    RequestBodyPolicy requestBodyPolicy();
+
+    /**
+     * Returns the request body as a stream.
+     * Reading more than the maximum size of the {@linkplain #requestBodyPolicy() request body policy} throws a
+     * {@link RequestBodyTooLargeException}.
+     *
+     * @see HttpExchange#requestBody()
      */
     @Caching(NOT_THREAD_SAFE)
     default InputStream requestBody() {
-        return exchange().getRequestBody();
+        return new LimitedInputStream(exchange().requestBody(), requestBodyPolicy().maxSize());
     }
 
     /**
-     * @see HttpExchange#getRequestHeaders()
+     * Reads the request body completely and returns it for random access and multiple passes.
+     * Depending on the {@linkplain #requestBodyPolicy() request body policy}, the request body is kept in a pooled
+     * buffer or spilled to a temporary file.
+     * It gets closed when the exchange is closed.
+     *
+     * @throws RequestBodyTooLargeException if the request body exceeds the maximum size of the policy.
+     */
+    @Caching(NOT_THREAD_SAFE)
+    default RequestBody bufferedRequestBody() throws IOException {
+        final var body = RequestBody.read(exchange().requestBody(), requestBodyPolicy());
+        exchange().attributes().put("requestBody", body);
+        return body;
+    }
+
+    /**
+     * @see HttpExchange#requestHeaders()
      */
     @Caching(NOT_THREAD_SAFE)
     default Headers requestHeaders() {
-        return exchange().getRequestHeaders();
+        return exchange().requestHeaders();
     }
 
     /**
@@ -121,11 +150,11 @@ public interface HttpController {
     }
 
     /**
-     * @see HttpExchange#getRequestMethod()
+     * @see HttpExchange#requestMethod()
      */
     @Caching(NOT_THREAD_SAFE)
     default String requestMethod() {
-        return exchange().getRequestMethod();
+        return exchange().requestMethod();
     }
 
     /**
@@ -162,37 +191,103 @@ public interface HttpController {
     }
 
     /**
-     * @see HttpExchange#getRequestURI()
+     * @see HttpExchange#requestURI()
      */
     @Caching(NOT_THREAD_SAFE)
     default URI requestURI() {
-        return exchange().getRequestURI();
+        return exchange().requestURI();
     }
 
     /**
-     * @see HttpExchange#getResponseHeaders()
+     * @see HttpExchange#responseHeaders()
      */
     @Caching(NOT_THREAD_SAFE)
     default Headers responseHeaders() {
-        return exchange().getResponseHeaders();
+        return exchange().responseHeaders();
     }
 
     /**
      * Returns the exception thrown during request processing, if any.
      */
     default Optional<Throwable> throwable() {
-        return Optional.ofNullable((Throwable) context().getAttributes().get("throwable"));
+        return Optional.ofNullable((Throwable) exchange().attributes().get("throwable"));
+    }
+
+    /**
+     * Returns the remaining time until the deadline of the route expires, if any.
+     * The returned duration is never negative.
+     * Controllers should use it to bound the timeouts of downstream calls.
+     */
+    default Optional<Duration> remainingTime() {
+        return Optional
+                .ofNullable((Long) exchange().attributes().get("deadline"))
+                .map(deadline -> Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
     }
 
+    /**
+     * Adds the header {@code Content-Type: application/json} and returns an encoder for output.
+     * If the class of the encoded object is annotated with {@link JsonWritable}, then the encoder uses the JSON writer
+     * generated for it at compile time.
+     * Otherwise, it uses Jackson with the {@link #objectMapper()}.
+     */
     @Caching(NOT_THREAD_SAFE)
     default Encoder applicationJson() {
         responseHeaders().add("Content-Type", "application/json");
-        return Jackson.json(this::objectMapper).encoder(BIOS.stream(responseBody()));
+        final var jackson = Jackson.json(this::objectMapper).encoder(BIOS.stream(responseBody()));
+        return obj -> {
+            if (!JsonWriters.write(obj, responseBody())) {
+                jackson.encode(obj);
+            }
+        };
     }
 
+    /**
+     * Adds the header {@code Content-Type: application/cbor} and returns an encoder for output.
+     * The encoder uses Jackson with the {@link #cborObjectMapper()}, so the same DTOs can be encoded as with
+     * {@link #applicationJson()}, but the output is smaller and faster to parse.
+     */
+    @Caching(NOT_THREAD_SAFE)
+    default Encoder applicationCbor() {
+        responseHeaders().add("Content-Type", "application/cbor");
+        return Jackson.json(this::cborObjectMapper).encoder(BIOS.stream(responseBody()));
+    }
+
+    /**
+     * Adds the header {@code Vary: Accept} and returns the encoder for the media type which is preferred by the
+     * {@code Accept} header of the request, which is either {@link #applicationJson()} or {@link #applicationCbor()}.
+     * If there is no {@code Accept} header, then JSON is preferred.
+     *
+     * @throws NotAcceptableException if neither JSON nor CBOR is acceptable.
+     *                                If it's not caught, then the status code {@code 406} gets sent.
+     */
     @Caching(NOT_THREAD_SAFE)
+    default Encoder negotiated() throws NotAcceptableException {
+        responseHeaders().add("Vary", "Accept");
+        final var mediaTypes = List.of("application/json", "application/cbor");
+        final var mediaType = HeadersFun.acceptedMediaType(requestHeaders(), mediaTypes);
+        if (mediaType.isEmpty()) {
+            throw new NotAcceptableException(mediaTypes);
+        }
+        return "application/cbor".equals(mediaType.get()) ? applicationCbor() : applicationJson();
+    }
+
+    /**
+     * Returns the object mapper for {@link #applicationJson()}.
+     * By default, this is an instance which is shared by all controllers because creating an object mapper is
+     * expensive.
+     * It must not be reconfigured - override this method to use a custom object mapper instead.
+     */
     default ObjectMapper objectMapper() {
-        return new ObjectMapper();
+        return ObjectMappers.DEFAULT;
+    }
+
+    /**
+     * Returns the object mapper for {@link #applicationCbor()}.
+     * By default, this is an instance which is shared by all controllers.
+     * It must not be reconfigured - override this method to use a custom object mapper instead.
+     */
+    default ObjectMapper cborObjectMapper() {
+        return ObjectMappers.CBOR;
     }
 
     /**
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import jdk.jfr.*;
+
+/**
+ * The base class for the JFR events of the web framework.
+ * The fields are only populated if the event gets committed, so the events are cheap enough to leave enabled in
+ * production with a reasonable threshold.
+ * See {@code web-framework.jfc} for a settings file which records these events together with GC pauses and lock
+ * contention.
+ */
+@Category("Web Framework")
+@StackTrace(false)
+@Threshold("10 ms")
+abstract class HttpEvent extends Event {
+
+    @Label("Route")
+    @Description("The context path of the route.")
+    String route;
+
+    @Label("Method")
+    @Description("The request method.")
+    String method;
+
+    @Label("Status")
+    @Description("The response status code or zero if unknown.")
+    int status;
+
+    @Label("Bytes")
+    @Description("The size of the response body.")
+    @DataAmount
+    long bytes;
+
+    final void commit(final HttpRoute<?> route, final int status, final long bytes) {
+        if (shouldCommit()) {
+            commit(route.contextPath(), route.method().name(), status, bytes);
+        }
+    }
+
+    final void commit(final String route, final String method, final int status, final long bytes) {
+        if (shouldCommit()) {
+            this.route = route;
+            this.method = method;
+            this.status = status;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
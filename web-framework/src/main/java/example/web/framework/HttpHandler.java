@@ -4,10 +4,11 @@
  */
 package example.web.framework;
 
-import com.sun.net.httpserver.HttpExchange;
+import example.web.framework.spi.HttpExchange;
 import global.namespace.fun.io.bios.BIOS;
 
 import java.util.Map;
+import java.util.Optional;
 
 import static global.namespace.neuron.di.java.Incubator.wire;
 
@@ -17,23 +18,84 @@ interface HttpHandler<C extends HttpController> extends HttpRoute<C> {
 
     HttpServer server();
 
-    default void apply(final HttpExchange exchange) throws Exception {
-        final var response = BIOS.memory();
-        final int statusCode = response.applyWriter(responseBody ->
-                action().apply(
-                        wire(controller())
-                                .bind(HttpController::exchange).to(exchange)
-                                .bind(HttpController::responseBody).to(responseBody)
-                                .bind(HttpController::routes).to(this::routes)
-                                .using(server())
-                )
-        );
-        final var responseLength = response.size().orElse(-1);
-        if (responseLength <= 0) {
-            exchange.sendResponseHeaders(statusCode, -1);
-        } else {
-            exchange.sendResponseHeaders(statusCode, responseLength);
-            BIOS.copy(response, BIOS.stream(exchange.getResponseBody()));
+    /**
+     * Returns the bulkhead to execute requests on, if any.
+     */
+    Optional<Bulkhead> bulkhead();
+
+    /**
+     * Returns the adaptive limit for the number of requests in flight, if any.
+     */
+    Optional<ConcurrencyLimit> concurrencyLimit();
+
+    /**
+     * Returns the coalescer for concurrent identical requests, if any.
+     */
+    Optional<Coalescer> coalescer();
+
+    /**
+     * Returns the deadline for processing requests, if any.
+     */
+    Optional<Deadline> deadline();
+
+    /**
+     * Returns the hub to subscribe the exchange to if the action returns the status code {@code 200}, if any.
+     */
+    Optional<EventHub> eventHub();
+
+    /**
+     * Returns the static resources to serve, if any.
+     * The action is only executed if there is no file for the request.
+     */
+    Optional<StaticResources> staticResources();
+
+    /**
+     * Executes the request, sends the response and returns it.
+     * If the exchange has been subscribed to an event hub instead, then {@link BufferedResponse#SUBSCRIBED} is
+     * returned.
+     */
+    default BufferedResponse apply(final HttpExchange exchange) throws Exception {
+        final var staticResources = staticResources();
+        if (staticResources.isPresent()) {
+            final var event = new SendEvent();
+            event.begin();
+            final var served = staticResources.get().serve(exchange);
+            if (null != served) {
+                event.commit(this, served.response.statusCode, served.length);
+                return served.response;
+            }
+        }
+        final var coalescer = coalescer();
+        final var response = coalescer.isPresent() ? coalescer.get().apply(exchange, this::execute) : execute(exchange);
+        final var eventHub = eventHub();
+        if (eventHub.isPresent() && 200 == response.statusCode) {
+            eventHub.get().subscribe(exchange);
+            return BufferedResponse.SUBSCRIBED;
         }
+        final var event = new SendEvent();
+        event.begin();
+        response.sendTo(exchange);
+        event.commit(this, response.statusCode, response.body.length);
+        return response;
+    }
+
+    default BufferedResponse execute(final HttpExchange exchange) throws Exception {
+        final var response = BIOS.memory();
+        final var event = new ActionEvent();
+        final int statusCode = response.applyWriter(responseBody -> {
+            final var wiring = new WiringEvent();
+            wiring.begin();
+            final var controller = wire(controller())
+                    .bind(HttpController::exchange).to(exchange)
+                    .bind(HttpController::responseBody).to(responseBody)
+                    .bind(HttpController::routes).to(this::routes)
+                    .using(server());
+            wiring.commit(this, 0, 0);
+            event.begin();
+            return action().apply(controller);
+        });
+        final var body = response.content();
+        event.commit(this, statusCode, body.length);
+        return new BufferedResponse(statusCode, body);
     }
 }
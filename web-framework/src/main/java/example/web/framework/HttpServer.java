@@ -4,8 +4,17 @@
  */
 package example.web.framework;
 
+import example.web.framework.jdk.JdkHttpEngine;
+import example.web.framework.spi.HttpEngine;
+import example.web.framework.spi.TlsPolicy;
+
+import javax.net.ssl.SSLContext;
+
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 
 import static global.namespace.neuron.di.java.Incubator.wire;
 import static java.util.Objects.requireNonNull;
@@ -13,12 +22,58 @@ import static java.util.Objects.requireNonNull;
 @SuppressWarnings("unused")
 public interface HttpServer {
 
+    /**
+     * Returns the engine to use for serving HTTP.
+     * Override this method in order to use another engine, e.g. {@link example.web.framework.nio.NioHttpEngine}.
+     */
+    default HttpEngine engine() {
+        return new JdkHttpEngine();
+    }
+
+    /**
+     * Returns the mode for responding to errors.
+     * Override this method in order to use {@link ErrorMode#PRODUCTION}.
+     */
+    default ErrorMode errorMode() {
+        return ErrorMode.DEVELOPMENT;
+    }
+
+    /**
+     * Returns the policy for reading request bodies.
+     * Override this method in order to change the limits.
+     * The returned policy should be cached because it holds a pool of buffers.
+     */
+    default RequestBodyPolicy requestBodyPolicy() {
+        return RequestBodyPolicy.DEFAULT;
+    }
+
+    /**
+     * Returns the adaptive limit for the number of requests in flight to all routes, if any.
+     * Routes with their own {@linkplain WithMethod#concurrencyLimit(ConcurrencyLimit) concurrency limit} are exempt.
+     * By default, there is no server-wide limit.
+     */
+    default Optional<ConcurrencyLimit> concurrencyLimit() {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the configuration for capturing a sample of the exchanges to a file, if any.
+     * By default, no traffic gets captured.
+     * Override this method in order to capture traffic which can be replayed using {@link TrafficReplay}.
+     */
+    default Optional<TrafficCapture> trafficCapture() {
+        return Optional.empty();
+    }
+
     @SuppressWarnings("unchecked")
     default <C extends HttpController> WithController<C> with(Class<C> controller) {
         return wire(HttpService.class)
                 .bind(HttpService::contextPath).to("/")
                 .bind(HttpService<C>::controller).to(requireNonNull(controller))
                 .bind(HttpService::handlers).to(new HashMap<>())
+                .bind(HttpService::lastHandler).to(() -> {
+                    throw new IllegalStateException("There is no route yet.");
+                })
                 .bind(HttpService::server).to(this)
                 .breed();
     }
@@ -59,6 +114,17 @@ public interface HttpServer {
             return route(contextPath).trace(action);
         }
 
+        /**
+         * Serves the regular files in the given directory and its subdirectories for {@code GET} and {@code HEAD}
+         * requests to the given context path and below, e.g. {@code routeStatic("/assets", Path.of("assets"))}.
+         * The content of the files gets transferred without copying it onto the heap.
+         * Range requests, conditional requests and precompressed variants with the extension {@code .gz} are
+         * supported.
+         * Requests for which there is no file get answered with the status code {@code 404}.
+         * Subsequent modifiers like {@link WithMethod#bulkhead(Bulkhead)} apply to the {@code GET} route.
+         */
+        WithMethod<T> routeStatic(String contextPath, Path directory);
+
         WithMethod<T> notFound(HttpAction<? super T> action);
 
         WithMethod<T> methodNotAllowed(HttpAction<? super T> action);
@@ -91,6 +157,73 @@ public interface HttpServer {
 
         <D extends HttpController> WithController<D> with(Class<D> controller);
 
-        void start(int port) throws IOException;
+        /**
+         * Coalesces concurrent identical requests to the most recently added route into a single execution of its
+         * action and shares the buffered response with all of them.
+         * Requests are identical if they have the same method, path, query and values of the given vary headers.
+         * Nothing is retained once the execution has completed, so this is not a cache, but it caps the work per
+         * request key at one execution at a time.
+         * Only routes for the methods {@code GET} and {@code HEAD} can be coalesced.
+         *
+         * @param varyHeaders the names of the request headers which the response depends upon, e.g.
+         *                    {@code Accept-Language}.
+         */
+        WithMethod<T> coalesced(String... varyHeaders);
+
+        /**
+         * Assigns the most recently added route to the given bulkhead so that slow routes cannot starve fast ones.
+         * Requests to this route get executed on the threads of the bulkhead.
+         * If the bulkhead is full, then requests get rejected with the status code {@code 503}.
+         */
+        WithMethod<T> bulkhead(Bulkhead bulkhead);
+
+        /**
+         * Limits the number of requests in flight to the most recently added route by the given adaptive limit.
+         * If the limit is reached, then requests get rejected with the status code {@code 503}.
+         * Sharing a limit between routes limits their sum.
+         */
+        WithMethod<T> concurrencyLimit(ConcurrencyLimit limit);
+
+        /**
+         * Bounds the time for processing requests to the most recently added route by the given deadline.
+         * If a request exceeds it before its response headers have been sent, then the thread executing the action
+         * gets interrupted and the status code {@code 504} gets sent to the client.
+         * Controllers can respect the remaining time in downstream calls using
+         * {@link HttpController#remainingTime()}.
+         */
+        WithMethod<T> deadline(Deadline deadline);
+
+        /**
+         * Turns the most recently added route into a stream of server-sent events from the given hub.
+         * The action of the route gets executed first, e.g. to check authorization.
+         * If it returns the status code {@code 200}, then its response body gets discarded and the exchange gets
+         * subscribed to the hub.
+         * Otherwise, its response gets sent as usual.
+         * Only routes for the method {@code GET} can stream events.
+         */
+        WithMethod<T> events(EventHub hub);
+
+        /**
+         * Returns the configured routes, indexed by context path and method.
+         */
+        Map<String, Map<HttpMethod, HttpRoute<?>>> routes();
+
+        /**
+         * Starts serving HTTP on the given port.
+         * The connections get managed by the {@linkplain HttpServer#engine() engine}, e.g. according to the
+         * {@link example.web.framework.spi.ConnectionPolicy} of a {@link example.web.framework.nio.NioHttpEngine}.
+         * The counters for the connections are available from {@link HttpEngine.Listener#connectionMetrics()}, if
+         * supported by the engine.
+         */
+        HttpEngine.Listener start(int port) throws IOException;
+
+        default HttpEngine.Listener startTls(int port, SSLContext context) throws IOException {
+            return startTls(port, TlsPolicy.of(context));
+        }
+
+        /**
+         * Like {@link #start(int)}, but serves HTTPS according to the given TLS policy.
+         */
+        HttpEngine.Listener startTls(int port, TlsPolicy policy) throws IOException;
     }
 }
@@ -4,14 +4,24 @@
  */
 package example.web.framework;
 
+import example.web.framework.spi.HttpEngine;
+import example.web.framework.spi.HttpExchange;
+import example.web.framework.spi.HttpExchangeHandler;
+import example.web.framework.spi.TlsPolicy;
 import global.namespace.neuron.di.java.Caching;
 import global.namespace.neuron.di.java.Neuron;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static example.web.framework.HttpMethod.*;
 import static example.web.framework.HttpServer.*;
@@ -30,6 +40,13 @@ interface HttpService<C extends HttpController> extends WithMethod<C> {
 
     HttpServer server();
 
+    /**
+     * Returns the most recently added handler.
+     *
+     * @throws IllegalStateException if no handler has been added yet.
+     */
+    HttpHandler<?> lastHandler();
+
     @SuppressWarnings("unchecked")
     @Override
     default <D extends HttpController> WithController<D> with(Class<D> controller) {
@@ -89,6 +106,19 @@ interface HttpService<C extends HttpController> extends WithMethod<C> {
         return invoke(TRACE, action);
     }
 
+    @Override
+    default WithMethod<C> routeStatic(final String contextPath, final Path directory) {
+        final var resources = Optional.of(new StaticResources(directory));
+        final var route = (HttpService<C>) route(contextPath);
+        WithMethod<C> result = null;
+        for (final var method : List.of(HEAD, GET)) {
+            result = route.decorate(wire(HttpHandler.class)
+                    .bind(HttpHandler::staticResources).to(resources)
+                    .using(handler(contextPath, method, controller(), controller -> 404)));
+        }
+        return result;
+    }
+
     @Override
     default WithMethod<C> notFound(HttpAction<? super C> action) {
         return invoke("404", GET, action);
@@ -117,8 +147,63 @@ interface HttpService<C extends HttpController> extends WithMethod<C> {
             String contextPath,
             HttpMethod method,
             HttpAction<? super C> action) {
-        handlers(contextPath).put(method, handler(contextPath, method, controller(), action));
-        return this;
+        final var handler = handler(contextPath, method, controller(), action);
+        handlers(contextPath).put(method, handler);
+        return wire(HttpService.class)
+                .bind(HttpService::lastHandler).to(handler)
+                .using(this);
+    }
+
+    @Override
+    default WithMethod<C> coalesced(final String... varyHeaders) {
+        final var method = lastHandler().method();
+        if (GET != method && HEAD != method) {
+            throw new IllegalStateException("Only GET and HEAD requests can be coalesced.");
+        }
+        return decorate(wire(HttpHandler.class)
+                .bind(HttpHandler::coalescer).to(Optional.of(new Coalescer(List.of(varyHeaders))))
+                .using(lastHandler()));
+    }
+
+    @Override
+    default WithMethod<C> bulkhead(final Bulkhead bulkhead) {
+        return decorate(wire(HttpHandler.class)
+                .bind(HttpHandler::bulkhead).to(Optional.of(bulkhead))
+                .using(lastHandler()));
+    }
+
+    @Override
+    default WithMethod<C> concurrencyLimit(final ConcurrencyLimit limit) {
+        return decorate(wire(HttpHandler.class)
+                .bind(HttpHandler::concurrencyLimit).to(Optional.of(limit))
+                .using(lastHandler()));
+    }
+
+    @Override
+    default WithMethod<C> deadline(final Deadline deadline) {
+        return decorate(wire(HttpHandler.class)
+                .bind(HttpHandler::deadline).to(Optional.of(deadline))
+                .using(lastHandler()));
+    }
+
+    @Override
+    default WithMethod<C> events(final EventHub hub) {
+        if (GET != lastHandler().method()) {
+            throw new IllegalStateException("Only GET requests can stream events.");
+        }
+        return decorate(wire(HttpHandler.class)
+                .bind(HttpHandler::eventHub).to(Optional.of(hub))
+                .using(lastHandler()));
+    }
+
+    /**
+     * Replaces the most recently added handler with the given decorated handler.
+     */
+    default WithMethod<C> decorate(final HttpHandler<?> handler) {
+        handlers(handler.contextPath()).put(handler.method(), handler);
+        return wire(HttpService.class)
+                .bind(HttpService::lastHandler).to(handler)
+                .using(this);
     }
 
     default Map<HttpMethod, HttpHandler<?>> handlers(String contextPath) {
@@ -126,55 +211,284 @@ interface HttpService<C extends HttpController> extends WithMethod<C> {
     }
 
     @Override
-    default void start(final int port) throws IOException {
+    default HttpEngine.Listener start(int port) throws IOException {
+        final var recorder = trafficRecorder();
+        try {
+            return serve("HTTP/1.1", recorder, server().engine().start(new InetSocketAddress(port),
+                    exchangeHandlers(recorder)));
+        } catch (IOException | RuntimeException e) {
+            recorder.ifPresent(TrafficRecorder::close);
+            throw e;
+        }
+    }
+
+    @Override
+    default HttpEngine.Listener startTls(int port, TlsPolicy tlsPolicy) throws IOException {
+        final var recorder = trafficRecorder();
+        try {
+            return serve("HTTPS", recorder, server().engine().startTls(new InetSocketAddress(port), tlsPolicy,
+                    exchangeHandlers(recorder)));
+        } catch (IOException | RuntimeException e) {
+            recorder.ifPresent(TrafficRecorder::close);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the file for capturing traffic, if configured.
+     */
+    private Optional<TrafficRecorder> trafficRecorder() throws IOException {
+        final var capture = server().trafficCapture();
+        return capture.isPresent() ? Optional.of(new TrafficRecorder(capture.get())) : Optional.empty();
+    }
+
+
+    private HttpEngine.Listener serve(
+            final String protocol,
+            final Optional<TrafficRecorder> recorder,
+            final HttpEngine.Listener engine
+    ) {
         final var log = LoggerFactory.getLogger(HttpService.class);
-        final var server = com.sun.net.httpserver.HttpServer.create(new InetSocketAddress(port), 0);
-        final var notFound = handlers("404")
-                .getOrDefault(GET, handler("404", GET, ErrorController.class, ErrorController::notFound));
-        final var methodNotAllowed = handlers("405")
-                .getOrDefault(GET, handler("405", GET, ErrorController.class, ErrorController::methodNotAllowed));
-        final var internalServerError = handlers("500")
-                .getOrDefault(GET, handler("500", GET, ErrorController.class, ErrorController::internalServerError));
-        final var notImplemented = handlers("501")
-                .getOrDefault(GET, handler("501", GET, ErrorController.class, ErrorController::notImplemented));
-        handlers("/"); // ensure entry as side effect
-        //noinspection CodeBlock2Expr
-        routes().forEach((path, handlers) -> {
-            server.createContext(path, exchange -> {
+        final var listener = recorder.isPresent() ? recorder.get().wrap(engine) : engine;
+        recorder.ifPresent(r -> log.info("Capturing traffic to {}.", r.capture().file()));
+        log.info("Serving {} on port {}.", protocol, listener.address().getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            log.info("Initiating shutdown.");
+            listener.stop(Integer.MAX_VALUE);
+            log.info("Shutdown completed.");
+        }));
+        return listener;
+    }
+
+    /**
+     * Returns a map of context paths to exchange handlers which dispatch to the configured routes and capture a sample
+     * of the exchanges if a traffic recorder is present.
+     * This method must not call any synapse or caching method because these are proxied by Neuron DI.
+     */
+    private Map<String, HttpExchangeHandler> exchangeHandlers(final Optional<TrafficRecorder> recorder) {
+        final var production = ErrorMode.PRODUCTION == server().errorMode();
+        final var maxRequestBodySize = server().requestBodyPolicy().maxSize();
+        final var serverLimit = server().concurrencyLimit();
+        final var log = new ExceptionLog(LoggerFactory.getLogger(HttpService.class),
+                production ? ExceptionLog.DEFAULT_SAMPLING_INTERVAL : Duration.ZERO);
+        final var notFound = errorHandler("404", ErrorController::notFound, production);
+        final var methodNotAllowed = errorHandler("405", ErrorController::methodNotAllowed, production);
+        final var internalServerError = errorHandler("500", ErrorController::internalServerError, production);
+        final var notImplemented = errorHandler("501", ErrorController::notImplemented, production);
+        final var contexts = new HashMap<String, HttpExchangeHandler>();
+        routes(handlers()).forEach((path, handlers) -> {
+            final var allow = handlers
+                    .keySet()
+                    .stream()
+                    .sorted()
+                    .map(HttpMethod::name)
+                    .collect(Collectors.joining(", "));
+            contexts.put(path, exchange -> {
+                final var event = new DispatchEvent();
+                event.begin();
+                Optional<HttpHandler<?>> handler;
+                BufferedResponse page;
                 try {
-                    HttpHandler<?> handler;
+                    final var method = HttpMethod.valueOf(exchange.requestMethod().toUpperCase(ENGLISH));
+                    final var route = (HttpHandler<?>) handlers.get(method);
+                    if (handlers.isEmpty()) {
+                        handler = notFound;
+                        page = ErrorPages.NOT_FOUND;
+                    } else if (null != route) {
+                        handler = Optional.of(route);
+                        page = null;
+                    } else {
+                        handler = methodNotAllowed;
+                        page = ErrorPages.METHOD_NOT_ALLOWED;
+                    }
+                } catch (IllegalArgumentException noSuchRequestMethod) {
+                    handler = notImplemented;
+                    page = ErrorPages.NOT_IMPLEMENTED;
+                }
+                if (handler.isEmpty()) {
+                    if (ErrorPages.METHOD_NOT_ALLOWED == page) {
+                        exchange.responseHeaders().add("Allow", allow);
+                    }
                     try {
-                        final var result = HttpMethod.valueOf(exchange.getRequestMethod().toUpperCase(ENGLISH));
-                        handler = handlers.isEmpty() ? notFound : (HttpHandler<?>) handlers.getOrDefault(result, methodNotAllowed);
-                    } catch (IllegalArgumentException noSuchRequestMethod) {
-                        handler = notImplemented;
+                        ErrorPages.send(exchange, page);
+                    } finally {
+                        exchange.close();
                     }
+                    event.commit(path, exchange.requestMethod(), page.statusCode, page.body.length);
+                    return;
+                }
+                final var h = handler.get();
+                if (contentLength(exchange) > maxRequestBodySize) {
+                    try {
+                        payloadTooLarge(exchange);
+                    } finally {
+                        exchange.close();
+                    }
+                    event.commit(path, exchange.requestMethod(), 413, ErrorPages.PAYLOAD_TOO_LARGE.body.length);
+                    return;
+                }
+                final var limit = h.concurrencyLimit().isPresent() ? h.concurrencyLimit() : serverLimit;
+                if (limit.isPresent() && !limit.get().tryAcquire()) {
+                    reject(exchange, 503);
+                    event.commit(path, exchange.requestMethod(), 503, 0);
+                    return;
+                }
+                final long admitted = System.nanoTime();
+                final var timed = h.deadline().map(d -> d.start(exchange));
+                final HttpExchange ex = timed.isPresent() ? timed.get() : exchange;
+                final Runnable task = () -> {
+                    if (timed.isPresent() && !timed.get().enter()) {
+                        limit.ifPresent(ConcurrencyLimit::onDropped);
+                        event.commit(path, exchange.requestMethod(), 504, 0);
+                        return;
+                    }
+                    BufferedResponse response = null;
                     try {
-                        handler.apply(exchange);
-                    } catch (final Throwable t1) {
-                        final var attributes = exchange.getHttpContext().getAttributes();
-                        attributes.put("throwable", t1);
-                        exchange.getResponseHeaders().clear();
                         try {
-                            internalServerError.apply(exchange);
-                        } catch (Throwable t2) {
-                            t1.addSuppressed(t2);
+                            response = h.apply(ex);
+                        } catch (final Throwable t1) {
+                            if (timed.isPresent() && timed.get().timedOut()) {
+                                throw t1;
+                            }
+                            if (t1 instanceof RequestBodyTooLargeException && !ex.responseHeadersSent()) {
+                                payloadTooLarge(ex);
+                                response = ErrorPages.PAYLOAD_TOO_LARGE;
+                            } else if (t1 instanceof NotAcceptableException && !ex.responseHeadersSent()) {
+                                final var vary = ex.responseHeaders().getFirst("Vary");
+                                ex.responseHeaders().clear();
+                                if (null != vary) {
+                                    ex.responseHeaders().set("Vary", vary);
+                                }
+                                ErrorPages.send(ex, ErrorPages.NOT_ACCEPTABLE);
+                                response = ErrorPages.NOT_ACCEPTABLE;
+                            } else {
+                                ex.attributes().put("throwable", t1);
+                                ex.responseHeaders().clear();
+                                try {
+                                    if (internalServerError.isPresent()) {
+                                        response = internalServerError.get().apply(ex);
+                                    } else if (!ex.responseHeadersSent()) {
+                                        ErrorPages.send(ex, ErrorPages.INTERNAL_SERVER_ERROR);
+                                        response = ErrorPages.INTERNAL_SERVER_ERROR;
+                                    }
+                                } catch (Throwable t2) {
+                                    t1.addSuppressed(t2);
+                                }
+                                throw t1;
+                            }
+                        }
+                    } catch (Throwable t) {
+                        if (timed.isPresent() && timed.get().timedOut()) {
+                            LoggerFactory.getLogger(HttpService.class).debug("Deadline exceeded:", t);
+                        } else {
+                            log.error("Internal Server Error:", t);
                         }
-                        throw t1;
                     }
-                } catch (Throwable t) {
-                    log.error("Internal Server Error:", t);
+                    timed.ifPresent(TimedExchange::exit);
+                    if (limit.isPresent()) {
+                        if (timed.isPresent() && timed.get().timedOut()) {
+                            limit.get().onDropped();
+                        } else {
+                            limit.get().onSuccess(System.nanoTime() - admitted);
+                        }
+                    }
+                    releaseRequestBody(ex);
+                    if (BufferedResponse.SUBSCRIBED != response) {
+                        ex.close();
+                    }
+                    if (null != response) {
+                        event.commit(path, exchange.requestMethod(), response.statusCode, response.body.length);
+                    } else if (timed.isPresent() && timed.get().timedOut()) {
+                        event.commit(path, exchange.requestMethod(), 504, 0);
+                    } else {
+                        event.commit(path, exchange.requestMethod(), 0, 0);
+                    }
+                };
+                final var bulkhead = h.bulkhead();
+                if (bulkhead.isEmpty()) {
+                    task.run();
+                } else if (!bulkhead.get().execute(task)) {
+                    timed.ifPresent(TimedExchange::exit);
+                    limit.ifPresent(ConcurrencyLimit::onIgnore);
+                    reject(exchange, 503);
+                    event.commit(path, exchange.requestMethod(), 503, 0);
                 }
-                exchange.close();
             });
         });
-        server.start();
-        log.info("Serving HTTP/1.1 on port {}.", port);
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            log.info("Initiating shutdown.");
-            server.stop(Integer.MAX_VALUE);
-            log.info("Shutdown completed.");
-        }));
+        return recorder.isPresent() ? recorder.get().wrap(contexts) : contexts;
+    }
+
+    /**
+     * Returns the value of the {@code Content-Length} request header or -1 if it's absent or malformed.
+     */
+    private static long contentLength(final HttpExchange exchange) {
+        final var value = exchange.requestHeaders().getFirst("Content-Length");
+        if (null == value) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sends the pre-rendered 413 page and asks the client to close the connection because the rest of the request
+     * body is not going to be read.
+     */
+    private static void payloadTooLarge(final HttpExchange exchange) throws IOException {
+        exchange.responseHeaders().clear();
+        exchange.responseHeaders().set("Connection", "close");
+        ErrorPages.send(exchange, ErrorPages.PAYLOAD_TOO_LARGE);
+    }
+
+    /**
+     * Closes the buffered request body, if any, so that its buffer is returned to the pool and its temporary file, if
+     * any, is deleted.
+     */
+    private static void releaseRequestBody(final HttpExchange exchange) {
+        final var body = (RequestBody) exchange.attributes().remove("requestBody");
+        if (null != body) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                LoggerFactory.getLogger(HttpService.class).debug("Cannot release request body:", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the custom error handler for the given pseudo context path, if configured.
+     * Otherwise, returns a handler for the given default action in development mode or nothing in production mode,
+     * where a pre-rendered error page is served instead.
+     */
+    private Optional<HttpHandler<?>> errorHandler(
+            final String contextPath,
+            final HttpAction<? super ErrorController> action,
+            final boolean production
+    ) {
+        final var custom = handlers(contextPath).get(GET);
+        if (null != custom) {
+            return Optional.of(custom);
+        } else if (production) {
+            return Optional.empty();
+        } else {
+            return Optional.of(handler(contextPath, GET, ErrorController.class, action));
+        }
+    }
+
+    /**
+     * Sends the given status code without a response body and without wiring a controller.
+     */
+    private static void reject(final HttpExchange exchange, final int statusCode) {
+        try {
+            exchange.sendResponseHeaders(statusCode, -1);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(HttpService.class).debug("Cannot reject exchange:", e);
+        } finally {
+            exchange.close();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -189,12 +503,30 @@ interface HttpService<C extends HttpController> extends WithMethod<C> {
                 .bind(HttpHandler::contextPath).to(contextPath)
                 .bind(HttpHandler<D>::controller).to(controller)
                 .bind(HttpHandler::method).to(method)
+                .bind(HttpHandler::bulkhead).to(Optional.empty())
+                .bind(HttpHandler::coalescer).to(Optional.empty())
+                .bind(HttpHandler::concurrencyLimit).to(Optional.empty())
+                .bind(HttpHandler::deadline).to(Optional.empty())
+                .bind(HttpHandler::eventHub).to(Optional.empty())
+                .bind(HttpHandler::staticResources).to(Optional.empty())
                 .using(this);
     }
 
     @Caching
+    @Override
     default Map<String, Map<HttpMethod, HttpRoute<?>>> routes() {
-        return handlers()
+        return routes(handlers());
+    }
+
+    /**
+     * Returns an immutable copy of the given handlers for all context paths, excluding the pseudo context paths of the
+     * error handlers.
+     */
+    private static Map<String, Map<HttpMethod, HttpRoute<?>>> routes(
+            final Map<String, Map<HttpMethod, HttpHandler<?>>> handlers
+    ) {
+        handlers.computeIfAbsent("/", p -> new EnumMap<>(HttpMethod.class)); // ensure entry as side effect
+        return handlers
                 .entrySet()
                 .stream()
                 .filter(e1 -> e1.getKey().startsWith("/"))
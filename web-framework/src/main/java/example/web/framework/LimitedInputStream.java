@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Throws a {@link RequestBodyTooLargeException} when reading more than the maximum size from the underlying stream.
+ */
+final class LimitedInputStream extends FilterInputStream {
+
+    private final long maxSize;
+    private long remaining;
+
+    LimitedInputStream(final InputStream in, final long maxSize) {
+        super(in);
+        this.maxSize = maxSize;
+        this.remaining = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (0 <= b) {
+            consumed(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = super.read(b, off, len);
+        if (0 < n) {
+            consumed(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        consumed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void consumed(final long n) throws RequestBodyTooLargeException {
+        remaining -= n;
+        if (remaining < 0) {
+            throw new RequestBodyTooLargeException(maxSize);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.util.List;
+
+/**
+ * Indicates that none of the media types which an action can produce is acceptable according to the {@code Accept}
+ * header of the request.
+ * If an action throws this exception before sending the response headers, then the status code {@code 406} gets sent.
+ *
+ * @see HttpController#negotiated()
+ */
+public final class NotAcceptableException extends Exception {
+
+    private static final long serialVersionUID = 0L;
+
+    NotAcceptableException(final List<String> mediaTypes) {
+        super("None of the media types " + String.join(", ", mediaTypes) + " is acceptable.");
+    }
+}
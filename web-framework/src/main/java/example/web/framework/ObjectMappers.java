@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+final class ObjectMappers {
+
+    /**
+     * An object mapper with the default configuration.
+     * Object mappers are thread-safe as long as they don't get reconfigured.
+     */
+    static final ObjectMapper DEFAULT = new ObjectMapper();
+
+    /**
+     * An object mapper for CBOR with the default configuration.
+     */
+    static final ObjectMapper CBOR = new CBORMapper();
+
+    private ObjectMappers() {
+    }
+}
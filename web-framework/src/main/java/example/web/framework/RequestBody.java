@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A request body which has been read completely, so that it supports random access and multiple passes.
+ * Depending on the {@link RequestBodyPolicy}, it's kept in a pooled buffer or spilled to a temporary file, so that even
+ * very large request bodies don't increase the heap usage.
+ * <p>
+ * A request body gets closed when its exchange is closed, which returns the buffer to the pool or deletes the
+ * temporary file.
+ * Thereafter, neither the request body nor any buffer, channel or stream obtained from it must be used anymore.
+ * This class is not thread-safe.
+ */
+public final class RequestBody implements AutoCloseable {
+
+    private final RequestBodyPolicy policy;
+    private final long size;
+    private byte[] buffer;
+    private FileChannel channel;
+    private ByteBuffer mapped;
+
+    private RequestBody(final RequestBodyPolicy policy, final long size, final byte[] buffer, final FileChannel channel) {
+        this.policy = policy;
+        this.size = size;
+        this.buffer = buffer;
+        this.channel = channel;
+    }
+
+    /**
+     * Reads the given stream completely according to the given policy.
+     *
+     * @throws RequestBodyTooLargeException if the stream exceeds the maximum size of the policy.
+     */
+    static RequestBody read(final InputStream in, final RequestBodyPolicy policy) throws IOException {
+        final var limited = new LimitedInputStream(in, policy.maxSize());
+        final var buffer = policy.acquireBuffer();
+        try {
+            final int count = limited.readNBytes(buffer, 0, buffer.length);
+            final var probe = new byte[1];
+            if (count < buffer.length || limited.read(probe, 0, 1) < 0) {
+                return new RequestBody(policy, count, buffer, null);
+            }
+            final var file = policy.tempDirectory().isPresent()
+                    ? Files.createTempFile(policy.tempDirectory().get(), "request-body", ".tmp")
+                    : Files.createTempFile("request-body", ".tmp");
+            // The file gets deleted when the channel gets closed:
+            final var channel = FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+            try {
+                channel.write(ByteBuffer.wrap(buffer));
+                channel.write(ByteBuffer.wrap(probe));
+                for (int n; 0 <= (n = limited.read(buffer)); ) {
+                    channel.write(ByteBuffer.wrap(buffer, 0, n));
+                }
+                final var size = channel.size();
+                policy.releaseBuffer(buffer);
+                return new RequestBody(policy, size, null, channel);
+            } catch (IOException | RuntimeException | Error e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            policy.releaseBuffer(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the size of this request body in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if this request body is kept in memory or {@code false} if it's been spilled to a file.
+     */
+    public boolean inMemory() {
+        return null == channel;
+    }
+
+    /**
+     * Returns a read-only buffer with the contents of this request body.
+     * If this request body has been spilled to a file, then the returned buffer is a {@code MappedByteBuffer}.
+     * Each call returns a new buffer with its own position and limit.
+     *
+     * @throws UnsupportedOperationException if this request body is larger than {@link Integer#MAX_VALUE} bytes.
+     *                                       Use {@link #fileChannel()} instead.
+     */
+    public ByteBuffer byteBuffer() throws IOException {
+        ensureOpen();
+        if (null != buffer) {
+            return ByteBuffer.wrap(buffer, 0, (int) size).slice().asReadOnlyBuffer();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new UnsupportedOperationException("The request body is too large to map it into memory.");
+        }
+        if (null == mapped) {
+            mapped = channel.map(READ_ONLY, 0, size);
+        }
+        return mapped.duplicate();
+    }
+
+    /**
+     * Returns the channel for the temporary file if this request body has been spilled to it.
+     * The channel must only be used for reading with absolute positions, e.g. {@link FileChannel#read(ByteBuffer, long)}
+     * or {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     */
+    public Optional<FileChannel> fileChannel() throws IOException {
+        ensureOpen();
+        return Optional.ofNullable(channel);
+    }
+
+    /**
+     * Returns a new input stream for reading this request body from the start.
+     */
+    public InputStream inputStream() throws IOException {
+        ensureOpen();
+        if (null != buffer) {
+            return new ByteArrayInputStream(buffer, 0, (int) size);
+        }
+        final var channel = this.channel;
+        return new InputStream() {
+
+            long position;
+
+            @Override
+            public int read() throws IOException {
+                final var b = new byte[1];
+                return 0 < read(b, 0, 1) ? b[0] & 0xff : -1;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                if (0 == len) {
+                    return 0;
+                }
+                final int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+                if (0 < n) {
+                    position += n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(final long n) {
+                final long skipped = Math.max(0, Math.min(n, size - position));
+                position += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, size - position);
+            }
+        };
+    }
+
+    private void ensureOpen() throws IOException {
+        if (null == buffer && null == channel) {
+            throw new IOException("Request body closed.");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        if (null != buffer) {
+            policy.releaseBuffer(buffer);
+            buffer = null;
+        }
+        if (null != channel) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
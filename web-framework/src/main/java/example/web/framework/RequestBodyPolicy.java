@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An immutable configuration for reading request bodies.
+ * Request bodies up to the memory threshold are kept in pooled buffers, larger ones get spilled to a temporary file.
+ * Request bodies larger than the maximum size get rejected with the status code {@code 413}.
+ * If the request has a {@code Content-Length} header, then this happens before invoking the action of the route.
+ * <p>
+ * Each policy has its own pool of buffers, so it should be created once and not per request.
+ */
+public final class RequestBodyPolicy {
+
+    public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024 * 1024;
+
+    /**
+     * The maximum number of pooled buffers.
+     */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /**
+     * A policy with the default settings, which spills to the default temporary-file directory.
+     */
+    public static final RequestBodyPolicy DEFAULT =
+            new RequestBodyPolicy(DEFAULT_MEMORY_THRESHOLD, DEFAULT_MAX_SIZE, Optional.empty());
+
+    private final int memoryThreshold;
+    private final long maxSize;
+    private final Optional<Path> tempDirectory;
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    private RequestBodyPolicy(final int memoryThreshold, final long maxSize, final Optional<Path> tempDirectory) {
+        if (memoryThreshold <= 0) {
+            throw new IllegalArgumentException("`memoryThreshold` needs to be positive.");
+        }
+        this.memoryThreshold = memoryThreshold;
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("`maxSize` must not be negative.");
+        }
+        this.maxSize = maxSize;
+        this.tempDirectory = requireNonNull(tempDirectory);
+    }
+
+    /**
+     * Returns a policy with the given maximum size of request bodies to keep in memory.
+     */
+    public RequestBodyPolicy withMemoryThreshold(int memoryThreshold) {
+        return new RequestBodyPolicy(memoryThreshold, maxSize, tempDirectory);
+    }
+
+    /**
+     * Returns a policy with the given maximum size of request bodies.
+     */
+    public RequestBodyPolicy withMaxSize(long maxSize) {
+        return new RequestBodyPolicy(memoryThreshold, maxSize, tempDirectory);
+    }
+
+    /**
+     * Returns a policy which spills large request bodies to temporary files in the given directory.
+     */
+    public RequestBodyPolicy withTempDirectory(Path tempDirectory) {
+        return new RequestBodyPolicy(memoryThreshold, maxSize, Optional.of(tempDirectory));
+    }
+
+    public int memoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    public Optional<Path> tempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Returns a buffer with the length of the memory threshold from the pool or a new one if the pool is empty.
+     */
+    byte[] acquireBuffer() {
+        final var buffer = buffers.poll();
+        if (null != buffer) {
+            pooledBuffers.decrementAndGet();
+            return buffer;
+        }
+        return new byte[memoryThreshold];
+    }
+
+    /**
+     * Returns the given buffer to the pool unless the pool is full.
+     */
+    void releaseBuffer(final byte[] buffer) {
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            buffers.add(buffer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.io.IOException;
+
+/**
+ * Indicates that a request body exceeds the maximum size of the {@link RequestBodyPolicy}.
+ * If an action throws this exception before sending the response headers, then the status code {@code 413} gets sent.
+ */
+public final class RequestBodyTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 0L;
+
+    RequestBodyTooLargeException(final long maxSize) {
+        super("The request body exceeds the maximum size of " + maxSize + " bytes.");
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import com.sun.net.httpserver.Headers;
+import example.web.framework.spi.HttpExchange;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Locale.ENGLISH;
+
+/**
+ * Serves the regular files in a directory.
+ * The metadata of each file, i.e. its size, last modification time, entity tag and content type, is cached and
+ * revalidated at most once per revalidation interval, so changed files get picked up without a restart.
+ * The content is never copied onto the heap: It's written using {@link HttpExchange#transferFrom}.
+ * <p>
+ * Conditional requests using {@code If-None-Match} or {@code If-Modified-Since} get answered with the status code
+ * {@code 304}.
+ * A single byte range in a {@code Range} header gets answered with the status code {@code 206}, optionally subject to
+ * an {@code If-Range} header.
+ * If there is a precompressed variant of a file with the extension {@code .gz} and the client accepts the gzip content
+ * coding, then this variant gets served instead, except for range requests.
+ */
+final class StaticResources {
+
+    static final Duration DEFAULT_REVALIDATION_INTERVAL = Duration.ofSeconds(1);
+
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", ENGLISH);
+
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+            Map.entry("css", "text/css; charset=UTF-8"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("htm", "text/html; charset=UTF-8"),
+            Map.entry("html", "text/html; charset=UTF-8"),
+            Map.entry("ico", "image/x-icon"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("js", "text/javascript; charset=UTF-8"),
+            Map.entry("json", "application/json"),
+            Map.entry("map", "application/json"),
+            Map.entry("pdf", "application/pdf"),
+            Map.entry("png", "image/png"),
+            Map.entry("svg", "image/svg+xml"),
+            Map.entry("txt", "text/plain; charset=UTF-8"),
+            Map.entry("wasm", "application/wasm"),
+            Map.entry("webp", "image/webp"),
+            Map.entry("woff", "font/woff"),
+            Map.entry("woff2", "font/woff2"),
+            Map.entry("xml", "application/xml")
+    );
+
+    private static final BufferedResponse NOT_MODIFIED = status(304);
+    private static final BufferedResponse RANGE_NOT_SATISFIABLE = status(416);
+    private static final BufferedResponse OK = status(200);
+    private static final BufferedResponse PARTIAL_CONTENT = status(206);
+
+    private static final Served SERVED_NOT_MODIFIED = new Served(NOT_MODIFIED, 0);
+    private static final Served SERVED_RANGE_NOT_SATISFIABLE = new Served(RANGE_NOT_SATISFIABLE, 0);
+
+    private final Path directory;
+    private final long revalidationInterval;
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+    StaticResources(final Path directory) {
+        this(directory, DEFAULT_REVALIDATION_INTERVAL);
+    }
+
+    StaticResources(final Path directory, final Duration revalidationInterval) {
+        this.revalidationInterval = revalidationInterval.toNanos();
+        try {
+            this.directory = directory.toRealPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!Files.isDirectory(this.directory)) {
+            throw new IllegalArgumentException(directory + " is not a directory.");
+        }
+    }
+
+    /**
+     * Returns the number of files with cached metadata.
+     */
+    int cached() {
+        return resources.size();
+    }
+
+    /**
+     * Serves the file addressed by the given exchange and returns the response without its body and the number of
+     * bytes transferred for its body.
+     * If there is no such file, then nothing is sent and {@code null} is returned.
+     */
+    Served serve(final HttpExchange exchange) throws IOException {
+        final var name = name(exchange);
+        if (null == name) {
+            return null;
+        }
+        final var resource = lookup(name);
+        if (null == resource) {
+            return null;
+        }
+        final var request = exchange.requestHeaders();
+        final var response = exchange.responseHeaders();
+        final var range = request.getFirst("Range");
+        var representation = resource;
+        if (resource.gzip.isPresent()) {
+            response.set("Vary", "Accept-Encoding");
+            if (null == range && acceptsGzip(request)) {
+                representation = resource.gzip.get();
+                response.set("Content-Encoding", "gzip");
+            }
+        }
+        response.set("Content-Type", resource.contentType);
+        response.set("Last-Modified", representation.lastModified);
+        response.set("ETag", representation.etag);
+        response.set("Accept-Ranges", "bytes");
+        if (notModified(request, representation)) {
+            exchange.sendResponseHeaders(304, -1);
+            return SERVED_NOT_MODIFIED;
+        }
+        var status = OK;
+        long first = 0, length = representation.size;
+        if (null != range && representation == resource && ifRange(request, resource)) {
+            final var positions = range(range, resource.size);
+            if (null != positions) {
+                if (0 == positions.length) {
+                    response.set("Content-Range", "bytes */" + resource.size);
+                    exchange.sendResponseHeaders(416, -1);
+                    return SERVED_RANGE_NOT_SATISFIABLE;
+                }
+                status = PARTIAL_CONTENT;
+                first = positions[0];
+                length = positions[1] - first + 1;
+                response.set("Content-Range", "bytes " + first + "-" + positions[1] + "/" + resource.size);
+            }
+        }
+        if ("HEAD".equals(exchange.requestMethod())) {
+            response.set("Content-Length", Long.toString(length));
+            exchange.sendResponseHeaders(status.statusCode, -1);
+            return new Served(status, 0);
+        }
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(representation.path, READ);
+        } catch (NoSuchFileException e) {
+            resources.remove(name, resource);
+            response.clear();
+            return null;
+        }
+        try (channel) {
+            exchange.sendResponseHeaders(status.statusCode, 0 == length ? -1 : length);
+            exchange.transferFrom(channel, first, length);
+        } catch (EOFException e) {
+            // The file has been truncated since its metadata has been cached:
+            resources.remove(name, resource);
+            throw e;
+        }
+        return new Served(status, length);
+    }
+
+    /**
+     * Returns the name of the file relative to the directory or {@code null} if the request path doesn't address a
+     * file within the directory.
+     */
+    private static String name(final HttpExchange exchange) {
+        final var path = exchange.requestURI().getPath();
+        final var contextPath = exchange.contextPath();
+        if (null == path || !path.startsWith(contextPath)) {
+            return null;
+        }
+        var name = path.substring(contextPath.length());
+        if (!contextPath.endsWith("/")) {
+            if (!name.startsWith("/")) {
+                return null;
+            }
+            name = name.substring(1);
+        }
+        if (name.isEmpty() || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0) {
+            return null;
+        }
+        for (final var segment : name.split("/", -1)) {
+            if (segment.isEmpty() || ".".equals(segment) || "..".equals(segment)) {
+                return null;
+            }
+        }
+        return name;
+    }
+
+    private Resource lookup(final String name) throws IOException {
+        final var cached = resources.get(name);
+        final long now = System.nanoTime();
+        if (null != cached && now - cached.validated < revalidationInterval) {
+            return cached;
+        }
+        final var loaded = load(directory.resolve(name), now);
+        if (null == loaded) {
+            if (null != cached) {
+                resources.remove(name, cached);
+            }
+            return null;
+        } else if (loaded.equals(cached)) {
+            cached.validated = now;
+            return cached;
+        } else {
+            resources.put(name, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Loads the metadata of the given file and its precompressed variant, if any.
+     * Returns {@code null} if the file doesn't exist, isn't a regular file or resolves to a path outside of the
+     * directory, e.g. via a symbolic link.
+     */
+    private Resource load(final Path file, final long now) throws IOException {
+        final var attributes = attributes(file);
+        if (null == attributes || !file.toRealPath().startsWith(directory)) {
+            return null;
+        }
+        final var gzipFile = file.resolveSibling(file.getFileName() + ".gz");
+        final var gzipAttributes = attributes(gzipFile);
+        final var contentType = contentType(file);
+        final var gzip = null != gzipAttributes && gzipFile.toRealPath().startsWith(directory)
+                ? Optional.of(new Resource(gzipFile, gzipAttributes, contentType, Optional.empty(), now))
+                : Optional.<Resource>empty();
+        return new Resource(file, attributes, contentType, gzip, now);
+    }
+
+    private static BasicFileAttributes attributes(final Path file) throws IOException {
+        try {
+            final var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static String contentType(final Path file) throws IOException {
+        final var name = file.getFileName().toString();
+        final var type = CONTENT_TYPES.get(name.substring(name.lastIndexOf('.') + 1).toLowerCase(ENGLISH));
+        if (null != type) {
+            return type;
+        }
+        final var probed = Files.probeContentType(file);
+        return null != probed ? probed : "application/octet-stream";
+    }
+
+    private static boolean acceptsGzip(final Headers request) {
+        final var acceptEncoding = request.getFirst("Accept-Encoding");
+        if (null == acceptEncoding) {
+            return false;
+        }
+        for (final var coding : acceptEncoding.split(",")) {
+            final var parameters = coding.split(";");
+            final var name = parameters[0].trim();
+            if ("gzip".equalsIgnoreCase(name) || "*".equals(name)) {
+                for (int i = 1; i < parameters.length; i++) {
+                    final var parameter = parameters[i].trim();
+                    if (parameter.startsWith("q=") && parameter.substring(2).matches("0(?:\\.0{0,3})?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean notModified(final Headers request, final Resource resource) {
+        final var ifNoneMatch = request.getFirst("If-None-Match");
+        if (null != ifNoneMatch) {
+            for (final var tag : ifNoneMatch.split(",")) {
+                final var t = tag.trim();
+                if ("*".equals(t) || resource.etag.equals(t.startsWith("W/") ? t.substring(2) : t)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final var ifModifiedSince = date(request.getFirst("If-Modified-Since"));
+        return null != ifModifiedSince && resource.lastModifiedSeconds <= ifModifiedSince;
+    }
+
+    private static boolean ifRange(final Headers request, final Resource resource) {
+        final var ifRange = request.getFirst("If-Range");
+        if (null == ifRange) {
+            return true;
+        }
+        final var value = ifRange.trim();
+        if (value.startsWith("\"")) {
+            return resource.etag.equals(value);
+        }
+        final var date = date(value);
+        return null != date && resource.lastModifiedSeconds == date;
+    }
+
+    /**
+     * Returns the first and last byte position of the given single byte range, an empty array if it's not
+     * satisfiable or {@code null} if it should be ignored because it's malformed or has multiple ranges.
+     */
+    static long[] range(final String range, final long size) {
+        final var value = range.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6) || value.indexOf(',') >= 0) {
+            return null;
+        }
+        final var spec = value.substring(6).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            if (0 == dash) {
+                final long suffix = Long.parseLong(spec.substring(1));
+                if (suffix < 0) {
+                    return null;
+                }
+                return 0 == suffix || 0 == size ? new long[0] : new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            final long first = Long.parseLong(spec.substring(0, dash));
+            final var rest = spec.substring(dash + 1);
+            final long last = rest.isEmpty() ? Long.MAX_VALUE : Long.parseLong(rest);
+            if (first < 0 || last < first) {
+                return null;
+            }
+            return first >= size ? new long[0] : new long[]{first, Math.min(last, size - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Long date(final String value) {
+        if (null == value) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static BufferedResponse status(int statusCode) {
+        return new BufferedResponse(statusCode, new byte[0]);
+    }
+
+    /**
+     * The response to a request for a file and the number of bytes transferred for its body.
+     */
+    static final class Served {
+
+        final BufferedResponse response;
+        final long length;
+
+        Served(final BufferedResponse response, final long length) {
+            this.response = response;
+            this.length = length;
+        }
+    }
+
+    private static final class Resource {
+
+        final Path path;
+        final long size;
+        final long lastModifiedSeconds;
+        final String lastModified;
+        final String etag;
+        final String contentType;
+        final Optional<Resource> gzip;
+
+        volatile long validated;
+
+        Resource(
+                final Path path,
+                final BasicFileAttributes attributes,
+                final String contentType,
+                final Optional<Resource> gzip,
+                final long validated
+        ) {
+            this.path = path;
+            this.size = attributes.size();
+            final var modified = attributes.lastModifiedTime().toInstant();
+            this.lastModifiedSeconds = modified.getEpochSecond();
+            this.lastModified = HTTP_DATE.format(ZonedDateTime.ofInstant(
+                    Instant.ofEpochSecond(lastModifiedSeconds), ZoneOffset.UTC));
+            this.etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified.toEpochMilli()) + "\"";
+            this.contentType = contentType;
+            this.gzip = gzip;
+            this.validated = validated;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Resource)) {
+                return false;
+            }
+            final var that = (Resource) obj;
+            return this.path.equals(that.path) && this.etag.equals(that.etag) && this.gzip.equals(that.gzip);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + etag.hashCode();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import com.sun.net.httpserver.Headers;
+import example.web.framework.spi.HttpExchange;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * An exchange with a deadline.
+ * When the deadline expires before the response headers have been sent, then the timer interrupts the thread which
+ * has {@linkplain #enter() entered} this exchange and hands off sending the status code {@code 504} and closing the
+ * underlying exchange to an executor, because this may block.
+ * From then on, sending response headers fails and closing this exchange does nothing.
+ * I/O threads of the engine, e.g. event loops, do not get interrupted because this would close their channels.
+ * <p>
+ * The response headers are private to this exchange and only get copied to the underlying exchange when sending them,
+ * so that the timer can send the status code {@code 504} without any headers set by the action.
+ * The deadline is also stored in the attribute {@code deadline} as a value of {@link System#nanoTime()}, so that
+ * controllers can propagate the remaining time to downstream calls.
+ */
+final class TimedExchange implements HttpExchange {
+
+    private enum State {PENDING, RUNNING, DONE, TIMED_OUT}
+
+    private final HttpExchange exchange;
+    private final Runnable onTimeout;
+    private final Headers responseHeaders = new Headers();
+    private State state = State.PENDING;
+    private Thread thread;
+    private boolean committed;
+    private ScheduledFuture<?> future;
+
+    TimedExchange(final HttpExchange exchange, final long deadline, final Runnable onTimeout) {
+        this.exchange = exchange;
+        this.onTimeout = onTimeout;
+        responseHeaders.putAll(exchange.responseHeaders());
+        exchange.attributes().put("deadline", deadline);
+    }
+
+    synchronized void schedule(final ScheduledExecutorService timer, final Executor responder, final Duration timeout) {
+        future = timer.schedule(() -> expire(responder), timeout.toNanos(), NANOSECONDS);
+    }
+
+    /**
+     * Binds this exchange to the current thread so that the timer can interrupt it, unless it's an I/O thread of the
+     * engine.
+     *
+     * @return {@code false} if the deadline has already expired.
+     */
+    synchronized boolean enter() {
+        if (State.PENDING != state) {
+            return false;
+        }
+        state = State.RUNNING;
+        thread = exchange.inIoThread() ? null : Thread.currentThread();
+        return true;
+    }
+
+    /**
+     * Stops the timer and clears the interrupt status of the current thread if it has been interrupted by the timer.
+     */
+    synchronized void exit() {
+        if (State.TIMED_OUT == state) {
+            if (Thread.currentThread() == thread) {
+                Thread.interrupted();
+            }
+        } else {
+            state = State.DONE;
+            future.cancel(false);
+        }
+        thread = null;
+    }
+
+    /**
+     * Returns {@code true} if the deadline has expired before the response headers have been sent.
+     */
+    synchronized boolean timedOut() {
+        return State.TIMED_OUT == state;
+    }
+
+    /**
+     * Marks this exchange as timed out and interrupts the thread which has entered it, if any.
+     * This method gets called by the timer, so it must not block.
+     */
+    private void expire(final Executor responder) {
+        synchronized (this) {
+            if (State.DONE == state || committed) {
+                return;
+            }
+            state = State.TIMED_OUT;
+            if (null != thread) {
+                thread.interrupt();
+            }
+        }
+        onTimeout.run();
+        responder.execute(this::respond);
+    }
+
+    private void respond() {
+        try {
+            // The action never touches the headers of the underlying exchange, see `responseHeaders()`:
+            exchange.responseHeaders().clear();
+            exchange.sendResponseHeaders(504, -1);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(TimedExchange.class).debug("Cannot send timeout status:", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public String contextPath() {
+        return exchange.contextPath();
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return exchange.localAddress();
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return exchange.remoteAddress();
+    }
+
+    @Override
+    public Optional<Principal> principal() {
+        return exchange.principal();
+    }
+
+    @Override
+    public String protocol() {
+        return exchange.protocol();
+    }
+
+    @Override
+    public String requestMethod() {
+        return exchange.requestMethod();
+    }
+
+    @Override
+    public URI requestURI() {
+        return exchange.requestURI();
+    }
+
+    @Override
+    public Headers requestHeaders() {
+        return exchange.requestHeaders();
+    }
+
+    @Override
+    public InputStream requestBody() {
+        return exchange.requestBody();
+    }
+
+    @Override
+    public Headers responseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public void sendResponseHeaders(final int statusCode, final long responseLength) throws IOException {
+        synchronized (this) {
+            if (State.TIMED_OUT == state) {
+                throw new IOException("The deadline has expired.");
+            }
+            committed = true;
+        }
+        // Once committed, the timer never touches the headers of the underlying exchange:
+        final var headers = exchange.responseHeaders();
+        headers.clear();
+        headers.putAll(responseHeaders);
+        exchange.sendResponseHeaders(statusCode, responseLength);
+    }
+
+    @Override
+    public synchronized boolean responseHeadersSent() {
+        return committed || State.TIMED_OUT == state;
+    }
+
+    @Override
+    public OutputStream responseBody() {
+        return exchange.responseBody();
+    }
+
+    @Override
+    public void transferFrom(final FileChannel file, final long position, final long count) throws IOException {
+        exchange.transferFrom(file, position, count);
+    }
+
+    @Override
+    public boolean tryWrite(final byte[] b) throws IOException {
+        return exchange.tryWrite(b);
+    }
+
+    @Override
+    public boolean inIoThread() {
+        return exchange.inIoThread();
+    }
+
+    @Override
+    public Map<String, Object> attributes() {
+        return exchange.attributes();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (State.TIMED_OUT == state) {
+                return;
+            }
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An immutable configuration for capturing a sample of the exchanges of a server to an append-only file, which can be
+ * replayed later using {@link TrafficReplay}.
+ * Capturing is opt-in: Override {@link HttpServer#trafficCapture()} to return an instance of this class.
+ * <p>
+ * For each sampled exchange, the request method, URI, the values of the configured request headers, the request body
+ * and the arrival time get captured, plus the status code, length and checksum of the response body for comparison.
+ * Other request headers, e.g. {@code Authorization} or {@code Cookie}, are never captured.
+ * The redaction function can modify or drop any captured exchange before it gets written.
+ * <p>
+ * The captured exchanges get written by a background thread.
+ * If it cannot keep up, then captured exchanges get dropped rather than slowing down the server.
+ */
+public final class TrafficCapture {
+
+    public static final List<String> DEFAULT_HEADERS =
+            List.of("Accept", "Accept-Encoding", "Accept-Language", "Content-Type");
+
+    public static final int DEFAULT_MAX_BODY_SIZE = 64 * 1024;
+
+    public static final int DEFAULT_QUEUE_SIZE = 4 * 1024;
+
+    private final Path file;
+    private final double sampleRate;
+    private final List<String> headers;
+    private final int maxBodySize;
+    private final int queueSize;
+    private final Function<CapturedExchange, Optional<CapturedExchange>> redaction;
+
+    private TrafficCapture(
+            final Path file,
+            final double sampleRate,
+            final List<String> headers,
+            final int maxBodySize,
+            final int queueSize,
+            final Function<CapturedExchange, Optional<CapturedExchange>> redaction
+    ) {
+        this.file = requireNonNull(file);
+        if (!(0 <= sampleRate && sampleRate <= 1)) {
+            throw new IllegalArgumentException("`sampleRate` needs to be between zero and one.");
+        }
+        this.sampleRate = sampleRate;
+        this.headers = List.copyOf(headers);
+        if (maxBodySize < 0) {
+            throw new IllegalArgumentException("`maxBodySize` must not be negative.");
+        }
+        this.maxBodySize = maxBodySize;
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("`queueSize` needs to be positive.");
+        }
+        this.queueSize = queueSize;
+        this.redaction = requireNonNull(redaction);
+    }
+
+    /**
+     * Returns a configuration which captures all exchanges to the given file with the default settings.
+     * If the file already exists, then the captured exchanges get appended to it.
+     */
+    public static TrafficCapture to(Path file) {
+        return new TrafficCapture(file, 1, DEFAULT_HEADERS, DEFAULT_MAX_BODY_SIZE, DEFAULT_QUEUE_SIZE, Optional::of);
+    }
+
+    /**
+     * Returns a configuration which captures the given fraction of the exchanges, chosen at random.
+     */
+    public TrafficCapture withSampleRate(double sampleRate) {
+        return new TrafficCapture(file, sampleRate, headers, maxBodySize, queueSize, redaction);
+    }
+
+    /**
+     * Returns a configuration which captures the values of the given request headers only.
+     */
+    public TrafficCapture withHeaders(String... headers) {
+        return new TrafficCapture(file, sampleRate, List.of(headers), maxBodySize, queueSize, redaction);
+    }
+
+    /**
+     * Returns a configuration which does not capture exchanges with a request body larger than the given size.
+     */
+    public TrafficCapture withMaxBodySize(int maxBodySize) {
+        return new TrafficCapture(file, sampleRate, headers, maxBodySize, queueSize, redaction);
+    }
+
+    /**
+     * Returns a configuration which drops captured exchanges if more than the given number is waiting to get written.
+     */
+    public TrafficCapture withQueueSize(int queueSize) {
+        return new TrafficCapture(file, sampleRate, headers, maxBodySize, queueSize, redaction);
+    }
+
+    /**
+     * Returns a configuration which applies the given function to each captured exchange before writing it.
+     * The function may return a modified exchange, e.g. with a masked query parameter, or nothing in order to drop the
+     * exchange.
+     * It's called concurrently on the threads which execute the requests, so it needs to be thread-safe and fast.
+     */
+    public TrafficCapture withRedaction(Function<CapturedExchange, Optional<CapturedExchange>> redaction) {
+        return new TrafficCapture(file, sampleRate, headers, maxBodySize, queueSize, redaction);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public double sampleRate() {
+        return sampleRate;
+    }
+
+    public List<String> headers() {
+        return headers;
+    }
+
+    public int maxBodySize() {
+        return maxBodySize;
+    }
+
+    public int queueSize() {
+        return queueSize;
+    }
+
+    public Function<CapturedExchange, Optional<CapturedExchange>> redaction() {
+        return redaction;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import example.web.framework.spi.ConnectionMetrics;
+import example.web.framework.spi.HttpEngine;
+import example.web.framework.spi.HttpExchangeHandler;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Samples exchanges according to a {@link TrafficCapture} and writes them to its file on a background thread.
+ * The file gets opened when this recorder is created and closed when it gets {@linkplain #close() closed}.
+ */
+final class TrafficRecorder implements AutoCloseable {
+
+    private final TrafficCapture capture;
+    private final long epochNanos = epochNanos();
+    private final long originNanos = System.nanoTime();
+    private final BlockingQueue<CapturedExchange> queue;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(4 * 1024);
+    private final Thread writer;
+    private final LongAdder captured = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean failed;
+
+    TrafficRecorder(final TrafficCapture capture) throws IOException {
+        this.capture = capture;
+        this.queue = new ArrayBlockingQueue<>(capture.queueSize());
+        CaptureFile.truncate(capture.file());
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(capture.file(), CREATE, WRITE, APPEND), 64 * 1024));
+        CaptureFile.writeSegment(out, epochNanos);
+        this.writer = new Thread(this::write, "traffic-capture");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static long epochNanos() {
+        final var now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    TrafficCapture capture() {
+        return capture;
+    }
+
+    /**
+     * Returns the given exchange handlers, decorated so that they capture a sample of the exchanges.
+     */
+    Map<String, HttpExchangeHandler> wrap(final Map<String, HttpExchangeHandler> handlers) {
+        final var sampleRate = capture.sampleRate();
+        final var wrapped = new HashMap<String, HttpExchangeHandler>();
+        handlers.forEach((path, handler) -> wrapped.put(path, exchange -> {
+            if (!failed && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                handler.handle(new CapturingExchange(exchange, this, System.nanoTime()));
+            } else {
+                handler.handle(exchange);
+            }
+        }));
+        return wrapped;
+    }
+
+    /**
+     * Returns the given listener, decorated so that stopping it also closes this recorder.
+     */
+    HttpEngine.Listener wrap(final HttpEngine.Listener listener) {
+        return new HttpEngine.Listener() {
+
+            @Override
+            public InetSocketAddress address() {
+                return listener.address();
+            }
+
+            @Override
+            public Optional<ConnectionMetrics> connectionMetrics() {
+                return listener.connectionMetrics();
+            }
+
+            @Override
+            public void stop(int delay) {
+                try {
+                    listener.stop(delay);
+                } finally {
+                    close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Converts the given value of {@link System#nanoTime()} to nanoseconds since the epoch.
+     */
+    long timestamp(final long nanoTime) {
+        return epochNanos + (nanoTime - originNanos);
+    }
+
+    /**
+     * Redacts the given exchange and queues it for writing unless it doesn't fit into a record or the queue is full.
+     */
+    void record(final CapturedExchange exchange) {
+        try {
+            capture.redaction().apply(exchange).ifPresent(redacted -> {
+                if (!failed && !closed.get() && CaptureFile.fits(redacted) && queue.offer(redacted)) {
+                    captured.increment();
+                } else {
+                    dropped.increment();
+                }
+            });
+        } catch (RuntimeException e) {
+            dropped.increment();
+            LoggerFactory.getLogger(TrafficRecorder.class).warn("Cannot redact captured exchange:", e);
+        }
+    }
+
+    /**
+     * Returns the number of exchanges which have been queued for writing.
+     */
+    long captured() {
+        return captured.sum();
+    }
+
+    /**
+     * Returns the number of exchanges which have been dropped because they didn't fit into a record or the queue was
+     * full.
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                var exchange = queue.poll();
+                if (null == exchange) {
+                    out.flush();
+                    if (closed.get()) {
+                        break;
+                    }
+                    exchange = queue.poll(100, MILLISECONDS);
+                    if (null == exchange) {
+                        continue;
+                    }
+                }
+                CaptureFile.writeExchange(out, record, epochNanos, exchange);
+            }
+        } catch (IOException | InterruptedException e) {
+            failed = true;
+            queue.clear();
+            LoggerFactory.getLogger(TrafficRecorder.class).error("Cannot capture traffic to {}:", capture.file(), e);
+        }
+    }
+
+    /**
+     * Writes the queued exchanges and closes the file.
+     * Calling this method more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            LoggerFactory.getLogger(TrafficRecorder.class).error("Cannot close {}:", capture.file(), e);
+        }
+    }
+}
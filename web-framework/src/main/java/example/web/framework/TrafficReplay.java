@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.net.http.HttpClient.Version.HTTP_1_1;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Replays the exchanges in a file which has been written according to a {@link TrafficCapture} against a server and
+ * reports the latency percentiles and the responses which differ from the captured ones.
+ * Responses are compared by status code, length and CRC-32 checksum of the body, so responses which contain
+ * timestamps or other volatile data always differ.
+ * <p>
+ * The exchanges get replayed in the order in which they have been captured, which is the order of completion.
+ * Their arrival times are used for pacing: At speed {@code 1}, the gaps between requests are the same as in the
+ * capture, at speed {@code 2}, they are half as long, and so on, up to {@link Double#POSITIVE_INFINITY}, where the
+ * requests get sent as fast as possible.
+ * In any case, no more than the given number of requests is in flight at the same time, and gaps longer than
+ * {@link #MAX_GAP} get shortened to it.
+ * <p>
+ * Run it like this:
+ * <pre>{@code
+ * $ java -cp ... example.web.framework.TrafficReplay <file> <base-uri> [<speed>|max] [<concurrency>]
+ * }</pre>
+ */
+public final class TrafficReplay {
+
+    public static final Duration MAX_GAP = Duration.ofSeconds(10);
+
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(List.of("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+    }
+
+    private static final int MAX_DIFFS = 10;
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2 || 4 < args.length) {
+            System.err.println("Usage: TrafficReplay <file> <base-uri> [<speed>|max] [<concurrency>]");
+            System.exit(2);
+        }
+        final var speed = args.length < 3 ? 1 : parseSpeed(args[2]);
+        final var concurrency = args.length < 4 ? 64 : Integer.parseInt(args[3]);
+        System.out.println(replay(Path.of(args[0]), URI.create(args[1]), speed, concurrency));
+    }
+
+    private static double parseSpeed(final String arg) {
+        return "max".equals(arg) ? Double.POSITIVE_INFINITY : Double.parseDouble(arg);
+    }
+
+    /**
+     * Replays the exchanges in the given file against the server with the given base URI, e.g.
+     * {@code http://localhost:8080}.
+     *
+     * @param speed the factor for accelerating the replay compared to the capture or
+     *              {@link Double#POSITIVE_INFINITY} for replaying it as fast as possible.
+     * @param concurrency the maximum number of requests in flight.
+     */
+    public static Report replay(final Path file, final URI base, final double speed, final int concurrency)
+            throws IOException, InterruptedException {
+        if (!(0 < speed)) {
+            throw new IllegalArgumentException("`speed` needs to be positive.");
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("`concurrency` needs to be positive.");
+        }
+        final var prefix = base.toString().replaceAll("/+$", "");
+        final var client = HttpClient.newBuilder().version(HTTP_1_1).build();
+        final var permits = new Semaphore(concurrency);
+        final var report = new Report();
+        final var maxGap = MAX_GAP.toNanos();
+        final var start = System.nanoTime();
+        final var clock = new long[]{Long.MIN_VALUE, 0}; // last timestamp, offset
+        try {
+            CaptureFile.forEach(file, exchange -> {
+                final var timestamp = exchange.timestamp();
+                if (Long.MIN_VALUE != clock[0] && clock[0] < timestamp) {
+                    clock[1] += Math.min(timestamp - clock[0], maxGap);
+                }
+                if (Long.MIN_VALUE == clock[0] || clock[0] < timestamp) {
+                    clock[0] = timestamp;
+                }
+                try {
+                    if (Double.isFinite(speed)) {
+                        NANOSECONDS.sleep(start + (long) (clock[1] / speed) - System.nanoTime());
+                    }
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new IOException("Replay has been interrupted.", e));
+                }
+                send(client, prefix, exchange, report).whenComplete((ignored, t) -> permits.release());
+            });
+        } catch (UncheckedIOException e) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            throw e;
+        }
+        permits.acquire(concurrency);
+        report.duration = System.nanoTime() - start;
+        return report;
+    }
+
+    private static CompletableFuture<?> send(
+            final HttpClient client,
+            final String prefix,
+            final CapturedExchange exchange,
+            final Report report
+    ) {
+        final var body = exchange.body();
+        final var builder = HttpRequest
+                .newBuilder(URI.create(prefix + exchange.uri()))
+                .method(exchange.method(),
+                        0 == body.length ? BodyPublishers.noBody() : BodyPublishers.ofByteArray(body));
+        exchange.headers().forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name)) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        final var request = builder.build();
+        final var sent = System.nanoTime();
+        return client
+                .sendAsync(request, info -> BodySubscribers.fromSubscriber(new Checksum(), c -> c))
+                .whenComplete((response, t) -> {
+                    if (null != t) {
+                        report.error(exchange, t);
+                    } else {
+                        report.response(exchange, response, System.nanoTime() - sent);
+                    }
+                });
+    }
+
+    private static final class Checksum implements Flow.Subscriber<List<ByteBuffer>> {
+
+        final CRC32 crc = new CRC32();
+        long length;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (final var buffer : buffers) {
+                length += buffer.remaining();
+                crc.update(buffer);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * The result of replaying a capture file.
+     */
+    public static final class Report {
+
+        private long[] latencies = new long[1024];
+        private int requests;
+        private int errors;
+        private int diffs;
+        private final List<String> samples = new ArrayList<>();
+        private long duration;
+
+        private Report() {
+        }
+
+        private synchronized void response(
+                final CapturedExchange exchange,
+                final HttpResponse<Checksum> response,
+                final long latency
+        ) {
+            if (requests == latencies.length) {
+                latencies = Arrays.copyOf(latencies, 2 * requests);
+            }
+            latencies[requests++] = latency;
+            final var checksum = response.body();
+            if (exchange.statusCode() != response.statusCode()
+                    || exchange.responseLength() != checksum.length
+                    || exchange.responseChecksum() != (int) checksum.crc.getValue()) {
+                diff(String.format("%s %s: expected status %d with %d bytes (CRC %08x), " +
+                                "but got status %d with %d bytes (CRC %08x)",
+                        exchange.method(), exchange.uri(),
+                        exchange.statusCode(), exchange.responseLength(), exchange.responseChecksum(),
+                        response.statusCode(), checksum.length, (int) checksum.crc.getValue()));
+            }
+        }
+
+        private synchronized void error(final CapturedExchange exchange, final Throwable t) {
+            errors++;
+            diff(exchange.method() + " " + exchange.uri() + ": " + t);
+        }
+
+        private void diff(final String description) {
+            diffs++;
+            if (samples.size() < MAX_DIFFS) {
+                samples.add(description);
+            }
+        }
+
+        /**
+         * Returns the number of requests which received a response.
+         */
+        public synchronized int requests() {
+            return requests;
+        }
+
+        /**
+         * Returns the number of requests which failed without a response.
+         */
+        public synchronized int errors() {
+            return errors;
+        }
+
+        /**
+         * Returns the number of requests which failed or whose response differs from the captured one.
+         */
+        public synchronized int diffs() {
+            return diffs;
+        }
+
+        /**
+         * Returns descriptions of the first few differences.
+         */
+        public synchronized List<String> samples() {
+            return Collections.unmodifiableList(new ArrayList<>(samples));
+        }
+
+        /**
+         * Returns the latency at the given percentile, e.g. {@code 99.9}, or {@link Duration#ZERO} if there were no
+         * responses.
+         */
+        public synchronized Duration latency(final double percentile) {
+            if (0 == requests) {
+                return Duration.ZERO;
+            }
+            final var sorted = Arrays.copyOf(latencies, requests);
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100 * requests) - 1;
+            return Duration.ofNanos(sorted[Math.max(0, Math.min(requests - 1, index))]);
+        }
+
+        /**
+         * Returns the wall clock time of the replay.
+         */
+        public synchronized Duration duration() {
+            return Duration.ofNanos(duration);
+        }
+
+        @Override
+        public synchronized String toString() {
+            final var out = new StringBuilder(String.format(
+                    "%,d requests, %,d errors, %,d diffs in %.3f s (%,.0f requests/s)%n" +
+                            "latency p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+                    requests, errors, diffs, duration / 1e9, requests / Math.max(duration / 1e9, 1e-9),
+                    millis(latency(50)), millis(latency(90)), millis(latency(99)), millis(latency(99.9)),
+                    millis(latency(100))));
+            samples.forEach(sample -> out.append(System.lineSeparator()).append(sample));
+            if (samples.size() < diffs) {
+                out.append(System.lineSeparator()).append("...");
+            }
+            return out.toString();
+        }
+
+        private static double millis(final Duration duration) {
+            return duration.toNanos() / 1e6;
+        }
+    }
+
+    private TrafficReplay() {
+    }
+}
@@ -0,0 +1,15 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("example.web.framework.Wiring")
+@Label("HTTP Controller Wiring")
+@Description("Wires a new controller for a request.")
+final class WiringEvent extends HttpEvent {
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.jdk;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import example.web.framework.spi.HttpEngine;
+import example.web.framework.spi.HttpExchangeHandler;
+import example.web.framework.spi.TlsPolicy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+/**
+ * An engine which adapts the package {@code com.sun.net.httpserver}, which is bundled with the JDK since Java 6.
+ * This is the default engine.
+ * <p>
+ * The connections of this engine can only be tuned using the global system properties {@code sun.net.httpserver.*},
+ * so it does not manage them according to a {@link example.web.framework.spi.ConnectionPolicy} and does not provide
+ * connection metrics.
+ * Use {@link example.web.framework.nio.NioHttpEngine} for this.
+ */
+public class JdkHttpEngine implements HttpEngine {
+
+    @Override
+    public Listener start(final InetSocketAddress address, final Map<String, HttpExchangeHandler> handlers)
+            throws IOException {
+        return start(create(address), handlers);
+    }
+
+    @Override
+    public Listener startTls(
+            final InetSocketAddress address,
+            final TlsPolicy policy,
+            final Map<String, HttpExchangeHandler> handlers
+    ) throws IOException {
+        final var server = HttpsServer.create(address, 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(policy.sslContext()) {
+
+            @Override
+            public void configure(HttpsParameters params) {
+                params.setSSLParameters(policy.sslParameters());
+            }
+        });
+        return start(server, handlers);
+    }
+
+    private static Listener start(final HttpServer server, final Map<String, HttpExchangeHandler> handlers) {
+        handlers.forEach((path, handler) -> server.createContext(path, exchange ->
+                handler.handle(new JdkHttpExchange(exchange))));
+        server.start();
+        return new Listener() {
+
+            @Override
+            public InetSocketAddress address() {
+                return server.getAddress();
+            }
+
+            @Override
+            public void stop(int delay) {
+                server.stop(delay);
+            }
+        };
+    }
+
+    /**
+     * Creates an unstarted server which is bound to the given socket address.
+     */
+    protected HttpServer create(InetSocketAddress address) throws IOException {
+        return HttpServer.create(address, 0);
+    }
+}
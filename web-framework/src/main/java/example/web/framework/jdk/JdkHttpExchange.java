@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.jdk;
+
+import com.sun.net.httpserver.Headers;
+import example.web.framework.spi.HttpExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+final class JdkHttpExchange implements HttpExchange {
+
+    private final com.sun.net.httpserver.HttpExchange exchange;
+
+    // The attributes of a `com.sun.net.httpserver.HttpExchange` are shared with its `HttpContext`, so we need our own:
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    JdkHttpExchange(final com.sun.net.httpserver.HttpExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    @Override
+    public String contextPath() {
+        return exchange.getHttpContext().getPath();
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return exchange.getLocalAddress();
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return exchange.getRemoteAddress();
+    }
+
+    @Override
+    public Optional<Principal> principal() {
+        return Optional.ofNullable(exchange.getPrincipal());
+    }
+
+    @Override
+    public String protocol() {
+        return exchange.getProtocol();
+    }
+
+    @Override
+    public String requestMethod() {
+        return exchange.getRequestMethod();
+    }
+
+    @Override
+    public URI requestURI() {
+        return exchange.getRequestURI();
+    }
+
+    @Override
+    public Headers requestHeaders() {
+        return exchange.getRequestHeaders();
+    }
+
+    @Override
+    public InputStream requestBody() {
+        return exchange.getRequestBody();
+    }
+
+    @Override
+    public Headers responseHeaders() {
+        return exchange.getResponseHeaders();
+    }
+
+    @Override
+    public void sendResponseHeaders(int statusCode, long responseLength) throws IOException {
+        exchange.sendResponseHeaders(statusCode, responseLength);
+    }
+
+    @Override
+    public boolean responseHeadersSent() {
+        return exchange.getResponseCode() != -1;
+    }
+
+    @Override
+    public OutputStream responseBody() {
+        return exchange.getResponseBody();
+    }
+
+    @Override
+    public Map<String, Object> attributes() {
+        return attributes;
+    }
+
+    @Override
+    public void close() {
+        if (responseHeadersSent()) {
+            // Flush the response before the JDK drains any unread rest of the request body, which may block, e.g. when
+            // rejecting a request body which is too large:
+            try {
+                exchange.getResponseBody().close();
+            } catch (IOException ignored) {
+            }
+        }
+        exchange.close();
+    }
+}
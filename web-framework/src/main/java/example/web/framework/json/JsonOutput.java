@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A buffered output stream for JSON tokens which are encoded in UTF-8 exactly like Jackson's {@code UTF8JsonGenerator}
+ * does with its default features.
+ * This class is used by the generated {@link JsonWriter}s and is not thread-safe.
+ */
+public final class JsonOutput {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(US_ASCII);
+    private static final byte[] NULL = "null".getBytes(US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[512];
+    private int position;
+
+    JsonOutput(final OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Encodes the given string in UTF-8 for use with {@link #raw(byte[])}.
+     * The generated writers use this method to pre-encode their field names.
+     */
+    public static byte[] utf8(String s) {
+        return s.getBytes(UTF_8);
+    }
+
+    public void raw(final byte[] b) throws IOException {
+        if (b.length > buffer.length - position) {
+            flushBuffer();
+            if (b.length > buffer.length) {
+                out.write(b);
+                return;
+            }
+        }
+        System.arraycopy(b, 0, buffer, position, b.length);
+        position += b.length;
+    }
+
+    public void nullValue() throws IOException {
+        raw(NULL);
+    }
+
+    public void value(final boolean b) throws IOException {
+        raw(b ? TRUE : FALSE);
+    }
+
+    public void value(final Boolean b) throws IOException {
+        if (null == b) {
+            nullValue();
+        } else {
+            value(b.booleanValue());
+        }
+    }
+
+    public void value(final long l) throws IOException {
+        ascii(Long.toString(l));
+    }
+
+    public void value(final Number n) throws IOException {
+        if (null == n) {
+            nullValue();
+        } else if (n instanceof Double) {
+            value(n.doubleValue());
+        } else if (n instanceof Float) {
+            value(n.floatValue());
+        } else {
+            value(n.longValue());
+        }
+    }
+
+    /**
+     * Like Jackson, this method writes {@code NaN} and infinity as quoted strings.
+     */
+    public void value(final double d) throws IOException {
+        final var s = Double.toString(d);
+        if (Double.isFinite(d)) {
+            ascii(s);
+        } else {
+            value(s);
+        }
+    }
+
+    /**
+     * Like Jackson, this method writes {@code NaN} and infinity as quoted strings.
+     */
+    public void value(final float f) throws IOException {
+        final var s = Float.toString(f);
+        if (Float.isFinite(f)) {
+            ascii(s);
+        } else {
+            value(s);
+        }
+    }
+
+    public void value(final Enum<?> e) throws IOException {
+        if (null == e) {
+            nullValue();
+        } else {
+            value(e.name());
+        }
+    }
+
+    /**
+     * Writes the given string as a quoted and escaped JSON string.
+     * Like Jackson, this method escapes each half of a surrogate pair separately.
+     */
+    public void value(final String s) throws IOException {
+        if (null == s) {
+            nullValue();
+            return;
+        }
+        ensure(1);
+        buffer[position++] = '"';
+        for (int i = 0, l = s.length(); i < l; i++) {
+            final var c = s.charAt(i);
+            if (c < 0x80) {
+                if (c < 0x20 || c == '"' || c == '\\') {
+                    escape(c);
+                } else {
+                    ensure(1);
+                    buffer[position++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                unicodeEscape(c);
+            } else {
+                ensure(3);
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        ensure(1);
+        buffer[position++] = '"';
+    }
+
+    private void escape(final char c) throws IOException {
+        final char e;
+        switch (c) {
+            case '"':
+            case '\\':
+                e = c;
+                break;
+            case '\b':
+                e = 'b';
+                break;
+            case '\t':
+                e = 't';
+                break;
+            case '\n':
+                e = 'n';
+                break;
+            case '\f':
+                e = 'f';
+                break;
+            case '\r':
+                e = 'r';
+                break;
+            default:
+                unicodeEscape(c);
+                return;
+        }
+        ensure(2);
+        buffer[position++] = '\\';
+        buffer[position++] = (byte) e;
+    }
+
+    private void unicodeEscape(final char c) throws IOException {
+        ensure(6);
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xf];
+        buffer[position++] = HEX[(c >> 8) & 0xf];
+        buffer[position++] = HEX[(c >> 4) & 0xf];
+        buffer[position++] = HEX[c & 0xf];
+    }
+
+    private void ascii(final String s) throws IOException {
+        final var l = s.length();
+        ensure(l);
+        for (int i = 0; i < l; i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void ensure(final int n) throws IOException {
+        if (n > buffer.length - position) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (0 < position) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Writes any buffered bytes to the underlying output stream and flushes it.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+}
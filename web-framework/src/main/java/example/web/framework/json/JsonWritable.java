@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.json;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a DTO class for which the {@link JsonWriterProcessor} generates a {@link JsonWriter} at compile time.
+ * The generated writer is used by {@link example.web.framework.HttpController#applicationJson()} instead of Jackson's
+ * reflective bean introspection.
+ * <p>
+ * The processor supports classes with public instance fields of the types {@code String}, {@code boolean},
+ * {@code byte}, {@code short}, {@code int}, {@code long}, {@code float}, {@code double}, their wrapper classes and
+ * enums.
+ * The output is byte-identical to a default {@code ObjectMapper}, so the processor rejects anything which would
+ * make Jackson behave differently, e.g. public getters or Jackson annotations.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface JsonWritable {
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.json;
+
+import java.io.IOException;
+
+/**
+ * Writes objects of a given type as JSON.
+ * Implementations get generated by the {@link JsonWriterProcessor} for classes annotated with {@link JsonWritable}.
+ *
+ * @param <T> the type of the objects to write.
+ */
+public interface JsonWriter<T> {
+
+    void write(T value, JsonOutput out) throws IOException;
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.json;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+import static javax.lang.model.element.Modifier.*;
+import static javax.tools.Diagnostic.Kind.ERROR;
+
+/**
+ * Generates a {@link JsonWriter} for each class annotated with {@link JsonWritable}.
+ * For a class {@code com.acme.Foo}, the generated writer is {@code com.acme.FooJsonWriter}.
+ * For a nested class {@code com.acme.Foo.Bar}, it's {@code com.acme.Foo_BarJsonWriter}.
+ * <p>
+ * Like Jackson, the writer emits the public instance fields of the class and its super classes, starting with the
+ * top-most super class and in declaration order.
+ * The field names are pre-encoded in UTF-8 so that writing an object requires no reflection and no string encoding
+ * except for its values.
+ * <p>
+ * This processor is registered as a service, so it runs automatically for every module which depends on this one.
+ */
+@SupportedAnnotationTypes("example.web.framework.json.JsonWritable")
+public final class JsonWriterProcessor extends AbstractProcessor {
+
+    private static final Set<String> SUPPORTED_TYPES = Set.of(
+            "java.lang.String",
+            "java.lang.Boolean",
+            "java.lang.Byte",
+            "java.lang.Short",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "java.lang.Float",
+            "java.lang.Double"
+    );
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (final var element : roundEnv.getElementsAnnotatedWith(JsonWritable.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "Only classes can be @JsonWritable.");
+                continue;
+            }
+            final var type = (TypeElement) element;
+            if (validate(type)) {
+                try {
+                    generate(type, fields(type));
+                } catch (IOException e) {
+                    error(type, "Cannot generate JSON writer: " + e);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean validate(final TypeElement type) {
+        var valid = true;
+        if (!type.getModifiers().contains(PUBLIC)) {
+            error(type, "A @JsonWritable class needs to be public.");
+            valid = false;
+        }
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(STATIC)) {
+            error(type, "A nested @JsonWritable class needs to be static.");
+            valid = false;
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, "A @JsonWritable class must not be generic.");
+            valid = false;
+        }
+        for (var t = type; null != t; t = superclass(t)) {
+            for (final var e : t.getEnclosedElements()) {
+                if (hasJacksonAnnotation(e)) {
+                    error(e, "Jackson annotations are not supported by the generated JSON writer.");
+                    valid = false;
+                }
+                if (e.getKind() == ElementKind.METHOD && isGetter((ExecutableElement) e)) {
+                    error(e, "Getters are not supported by the generated JSON writer - use a public field instead.");
+                    valid = false;
+                }
+            }
+            if (hasJacksonAnnotation(t)) {
+                error(t, "Jackson annotations are not supported by the generated JSON writer.");
+                valid = false;
+            }
+        }
+        final var fields = fields(type);
+        if (fields.isEmpty()) {
+            error(type, "A @JsonWritable class needs at least one public instance field.");
+            valid = false;
+        }
+        for (final var field : fields) {
+            if (!isSupported(field.asType())) {
+                error(field, "The type of this field is not supported by the generated JSON writer.");
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private List<VariableElement> fields(final TypeElement type) {
+        final var hierarchy = new ArrayDeque<TypeElement>();
+        for (var t = type; null != t; t = superclass(t)) {
+            hierarchy.addFirst(t);
+        }
+        final var fields = new ArrayList<VariableElement>();
+        for (final var t : hierarchy) {
+            for (final var field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                final var modifiers = field.getModifiers();
+                if (modifiers.contains(PUBLIC) && !modifiers.contains(STATIC) && !modifiers.contains(TRANSIENT)) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private TypeElement superclass(final TypeElement type) {
+        final var superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        final var element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    private static boolean isGetter(final ExecutableElement method) {
+        final var modifiers = method.getModifiers();
+        if (!modifiers.contains(PUBLIC) || modifiers.contains(STATIC) || !method.getParameters().isEmpty()) {
+            return false;
+        }
+        final var name = method.getSimpleName().toString();
+        final var returnType = method.getReturnType().getKind();
+        return name.startsWith("get") && 3 < name.length() && returnType != TypeKind.VOID
+                || name.startsWith("is") && 2 < name.length() && returnType == TypeKind.BOOLEAN;
+    }
+
+    private static boolean hasJacksonAnnotation(final Element element) {
+        return element.getAnnotationMirrors().stream().anyMatch(a ->
+                a.getAnnotationType().toString().startsWith("com.fasterxml.jackson."));
+    }
+
+    private boolean isSupported(final TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            case DECLARED:
+                final var element = ((DeclaredType) type).asElement();
+                return element.getKind() == ElementKind.ENUM
+                        || SUPPORTED_TYPES.contains(((TypeElement) element).getQualifiedName().toString());
+            default:
+                return false;
+        }
+    }
+
+    private void generate(final TypeElement type, final List<VariableElement> fields) throws IOException {
+        final var pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        final var binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        final var simpleName = (pkg.isEmpty() ? binaryName : binaryName.substring(pkg.length() + 1)).replace('$', '_')
+                + "JsonWriter";
+        final var typeName = type.getQualifiedName().toString();
+        final var file = processingEnv.getFiler().createSourceFile(
+                pkg.isEmpty() ? simpleName : pkg + "." + simpleName, type);
+        try (var out = new PrintWriter(file.openWriter())) {
+            if (!pkg.isEmpty()) {
+                out.printf("package %s;%n%n", pkg);
+            }
+            out.printf("@javax.annotation.processing.Generated(\"%s\")%n", getClass().getName());
+            out.printf("public final class %s implements example.web.framework.json.JsonWriter<%s> {%n%n", simpleName, typeName);
+            for (int i = 0; i < fields.size(); i++) {
+                final var prefix = (0 == i ? "{" : ",") + "\"" + fields.get(i).getSimpleName() + "\":";
+                out.printf("    private static final byte[] NAME_%d = example.web.framework.json.JsonOutput.utf8(\"%s\");%n",
+                        i, prefix.replace("\\", "\\\\").replace("\"", "\\\""));
+            }
+            out.printf("    private static final byte[] END = example.web.framework.json.JsonOutput.utf8(\"}\");%n%n");
+            out.printf("    @Override%n");
+            out.printf("    public void write(final %s value, final example.web.framework.json.JsonOutput out) throws java.io.IOException {%n", typeName);
+            out.printf("        if (null == value) {%n");
+            out.printf("            out.nullValue();%n");
+            out.printf("            return;%n");
+            out.printf("        }%n");
+            for (int i = 0; i < fields.size(); i++) {
+                out.printf("        out.raw(NAME_%d);%n", i);
+                out.printf("        out.value(value.%s);%n", fields.get(i).getSimpleName());
+            }
+            out.printf("        out.raw(END);%n");
+            out.printf("    }%n");
+            out.printf("}%n");
+        }
+    }
+
+    private void error(final Element element, final String message) {
+        processingEnv.getMessager().printMessage(ERROR, message, element);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * Looks up the {@link JsonWriter}s generated by the {@link JsonWriterProcessor}.
+ */
+public final class JsonWriters {
+
+    private static final ClassValue<Optional<JsonWriter<?>>> writers = new ClassValue<>() {
+
+        @Override
+        protected Optional<JsonWriter<?>> computeValue(final Class<?> type) {
+            if (!type.isAnnotationPresent(JsonWritable.class)) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of((JsonWriter<?>) Class
+                        .forName(writerName(type), true, type.getClassLoader())
+                        .getDeclaredConstructor()
+                        .newInstance());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot find the generated JSON writer for " + type + " - is annotation processing disabled?", e);
+            }
+        }
+    };
+
+    private JsonWriters() {
+    }
+
+    /**
+     * Returns the generated writer for the given type, if any.
+     * Note that only the exact type is considered, not its super types.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Optional<JsonWriter<T>> of(Class<T> type) {
+        return (Optional<JsonWriter<T>>) (Optional<?>) writers.get(type);
+    }
+
+    /**
+     * Writes the given value to the given output stream using the generated writer for its class, if any.
+     * The output stream gets flushed, but not closed.
+     *
+     * @return {@code false} if the value is {@code null} or there is no generated writer for its class.
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean write(final Object value, final OutputStream out) throws IOException {
+        if (null == value) {
+            return false;
+        }
+        final var writer = of((Class<Object>) value.getClass());
+        if (writer.isPresent()) {
+            write(writer.get(), value, out);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the given value to the given output stream using the given writer.
+     * The output stream gets flushed, but not closed.
+     */
+    public static <T> void write(final JsonWriter<T> writer, final T value, final OutputStream out) throws IOException {
+        final var json = new JsonOutput(out);
+        writer.write(value, json);
+        json.flush();
+    }
+
+    static String writerName(final Class<?> type) {
+        final var name = type.getName();
+        final var pkg = type.getPackageName();
+        final var simpleName = pkg.isEmpty() ? name : name.substring(pkg.length() + 1);
+        return (pkg.isEmpty() ? "" : pkg + ".") + simpleName.replace('$', '_') + "JsonWriter";
+    }
+}
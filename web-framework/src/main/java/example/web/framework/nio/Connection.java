@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.nio;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static example.web.framework.nio.NioHttpEngine.REQUEST_BODY_MEMORY_THRESHOLD;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * An HTTP/1.1 connection.
+ * Except for {@link #enqueue(ByteBuffer)}, all methods must be called on the event loop thread.
+ */
+final class Connection {
+
+    /**
+     * If more than this number of bytes is pending for output, then threads other than the event loop thread get
+     * blocked when enqueuing more output.
+     */
+    private static final long HIGH_WATER_MARK = 1024 * 1024;
+
+    /**
+     * The initial capacity of the buffer for request heads.
+     * The buffer grows for larger request heads and gets shrunk back after dispatching the request.
+     */
+    private static final int INBOUND_SIZE = 4 * 1024;
+
+    /**
+     * The value of a timestamp which is not set.
+     */
+    private static final long NONE = Long.MIN_VALUE;
+
+    final EventLoop loop;
+    final SocketChannel channel;
+    final InetSocketAddress localAddress;
+    final InetSocketAddress remoteAddress;
+
+    private final SelectionKey key;
+    private final RequestDecoder decoder;
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+
+    private ByteBuffer inbound = ByteBuffer.allocate(INBOUND_SIZE);
+    private ByteBuffer unwritten;
+    private NioHttpExchange current;
+    private boolean continueSent, dispatching, closeAfterFlush;
+    private volatile boolean closed;
+    private int requests;
+
+    // Values of System.nanoTime() for checking the timeouts, or NONE:
+    private long idleSince, readingSince = NONE, writeStalledSince = NONE;
+
+    Connection(final EventLoop loop, final SocketChannel channel, final SelectionKey key) throws IOException {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+        this.decoder = new RequestDecoder(loop.listener.maxRequestBodySize, REQUEST_BODY_MEMORY_THRESHOLD);
+        this.idleSince = System.nanoTime();
+    }
+
+    void onReadable() throws IOException {
+        final var buffer = loop.readBuffer;
+        buffer.clear();
+        final int read = channel.read(buffer);
+        if (read < 0) {
+            close();
+            return;
+        }
+        buffer.flip();
+        if (inbound.remaining() < read) {
+            final var grown = ByteBuffer.allocate(Math.max(inbound.position() + read, 2 * inbound.capacity()));
+            inbound.flip();
+            inbound = grown.put(inbound);
+        }
+        inbound.put(buffer);
+        process();
+    }
+
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * Decodes and dispatches the buffered requests until the buffer is exhausted or an exchange is in progress.
+     */
+    private void process() {
+        while (null == current && !closeAfterFlush && !closed) {
+            final RequestDecoder.Request request;
+            inbound.flip();
+            try {
+                request = decoder.decode(inbound);
+            } catch (RequestException e) {
+                reject(e.statusCode);
+                return;
+            } finally {
+                inbound.compact();
+            }
+            if (null == request) {
+                if (0 == inbound.position() && !decoder.inProgress()) {
+                    readingSince = NONE;
+                    if (NONE == idleSince) {
+                        idleSince = System.nanoTime();
+                    }
+                } else {
+                    idleSince = NONE;
+                    if (NONE == readingSince) {
+                        readingSince = System.nanoTime();
+                    }
+                }
+                if (decoder.expectsContinue && !continueSent) {
+                    continueSent = true;
+                    try {
+                        enqueue(ByteBuffer.wrap("HTTP/1.1 100 Continue\r\n\r\n".getBytes(ISO_8859_1)));
+                    } catch (IOException e) {
+                        close();
+                        return;
+                    }
+                }
+                interest(OP_READ, true);
+                return;
+            }
+            continueSent = false;
+            if (INBOUND_SIZE < inbound.capacity() && inbound.position() <= INBOUND_SIZE) {
+                inbound.flip();
+                inbound = ByteBuffer.allocate(INBOUND_SIZE).put(inbound);
+            }
+            dispatch(request);
+        }
+    }
+
+    private void dispatch(final RequestDecoder.Request request) {
+        final var path = request.uri.getPath();
+        final var handler = loop.listener.handler(null == path ? "" : path);
+        if (null == handler) {
+            request.close();
+            reject(404);
+            return;
+        }
+        final var listener = loop.listener;
+        final var exchange = new NioHttpExchange(this, request, handler.getKey());
+        if (++requests >= listener.maxRequestsPerConnection) {
+            exchange.disableKeepAlive();
+        }
+        listener.requests.increment();
+        if (1 < requests) {
+            listener.reused.increment();
+        }
+        idleSince = readingSince = NONE;
+        current = exchange;
+        listener.activeExchanges.incrementAndGet();
+        // Stop reading until the exchange is complete - this provides back pressure for pipelined requests:
+        interest(OP_READ, false);
+        final var workers = listener.workers;
+        if (null == workers) {
+            dispatching = true;
+            try {
+                handler.getValue().handle(exchange);
+            } catch (IOException | RuntimeException e) {
+                failed(e);
+            } finally {
+                dispatching = false;
+            }
+        } else {
+            try {
+                workers.execute(() -> {
+                    try {
+                        handler.getValue().handle(exchange);
+                    } catch (IOException | RuntimeException e) {
+                        loop.execute(() -> failed(e));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+    }
+
+    private void failed(final Exception e) {
+        LoggerFactory.getLogger(Connection.class).debug("Handler failed:", e);
+        close();
+    }
+
+    /**
+     * Called when the given exchange has been closed.
+     */
+    void completed(final NioHttpExchange exchange) {
+        if (current != exchange) {
+            return;
+        }
+        current = null;
+        loop.listener.activeExchanges.decrementAndGet();
+        if (exchange.keepAlive()) {
+            if (!dispatching) {
+                process();
+            }
+        } else {
+            closeAfterFlush = true;
+            flush();
+        }
+    }
+
+    private void reject(final int statusCode) {
+        final var response = "HTTP/1.1 " + statusCode + " " + NioHttpExchange.reasonPhrase(statusCode) + "\r\n" +
+                "Content-length: 0\r\nConnection: close\r\n\r\n";
+        closeAfterFlush = true;
+        // Stop reading - the connection gets closed once the response has been flushed:
+        interest(OP_READ, false);
+        decoder.close();
+        try {
+            enqueue(ByteBuffer.wrap(response.getBytes(ISO_8859_1)));
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Enqueues the given buffer for output.
+     * This method may be called from any thread.
+     * If called on a thread other than the event loop thread, then it blocks while too much output is pending.
+     */
+    void enqueue(ByteBuffer buffer) throws IOException {
+        enqueue(buffer, true);
+    }
+
+    /**
+     * Enqueues the given buffer for output.
+     * This method may be called from any thread.
+     * If {@code block} is {@code true} and this method is called on a thread other than the event loop thread, then it
+     * blocks while too much output is pending.
+     */
+    void enqueue(final ByteBuffer buffer, final boolean block) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed.");
+        }
+        final long size = pending.addAndGet(buffer.remaining());
+        outbound.add(buffer);
+        if (loop.inEventLoop()) {
+            flush();
+        } else {
+            loop.execute(this::flush);
+            if (block && size > HIGH_WATER_MARK) {
+                awaitDrain();
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if too much output is pending, so that {@link #enqueue(ByteBuffer)} would block.
+     */
+    boolean congested() {
+        return pending.get() > HIGH_WATER_MARK;
+    }
+
+    private void awaitDrain() throws IOException {
+        synchronized (this) {
+            try {
+                while (pending.get() > HIGH_WATER_MARK && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        if (closed) {
+            throw new IOException("Connection closed.");
+        }
+    }
+
+    private void flush() {
+        if (closed) {
+            return;
+        }
+        final long before = pending.get();
+        boolean progressed = false;
+        try {
+            while (true) {
+                if (null != unwritten) {
+                    final int n = channel.write(unwritten);
+                    pending.addAndGet(-n);
+                    progressed |= 0 < n;
+                    if (unwritten.hasRemaining()) {
+                        stalled(progressed);
+                        return;
+                    }
+                    unwritten = null;
+                }
+                final var buffer = loop.writeBuffer;
+                buffer.clear();
+                for (ByteBuffer head; null != (head = outbound.peek()) && buffer.hasRemaining(); ) {
+                    if (head.isDirect()) {
+                        // Write direct buffers, e.g. mapped regions of files, without copying them:
+                        if (0 == buffer.position()) {
+                            unwritten = outbound.poll();
+                        }
+                        break;
+                    }
+                    final int n = Math.min(head.remaining(), buffer.remaining());
+                    final var slice = head.duplicate();
+                    slice.limit(slice.position() + n);
+                    buffer.put(slice);
+                    head.position(head.position() + n);
+                    if (!head.hasRemaining()) {
+                        outbound.poll();
+                    }
+                }
+                if (null != unwritten) {
+                    continue;
+                }
+                if (0 == buffer.position()) {
+                    break;
+                }
+                buffer.flip();
+                final int n = channel.write(buffer);
+                pending.addAndGet(-n);
+                progressed |= 0 < n;
+                if (buffer.hasRemaining()) {
+                    unwritten = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+                    stalled(progressed);
+                    return;
+                }
+            }
+            writeStalledSince = NONE;
+            interest(OP_WRITE, false);
+            if (closeAfterFlush) {
+                close();
+            }
+        } catch (IOException e) {
+            close();
+        } finally {
+            if (before > HIGH_WATER_MARK && pending.get() <= HIGH_WATER_MARK) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the socket to become writable and starts the write timeout unless it's already running and no output
+     * has been written since.
+     */
+    private void stalled(final boolean progressed) {
+        if (progressed || NONE == writeStalledSince) {
+            writeStalledSince = System.nanoTime();
+        }
+        interest(OP_WRITE, true);
+    }
+
+    /**
+     * Closes this connection if it has exceeded the write, read or idle timeout of the connection policy.
+     */
+    void sweep(final long now) {
+        if (closed) {
+            return;
+        }
+        final var listener = loop.listener;
+        if (NONE != writeStalledSince) {
+            if (now - writeStalledSince > listener.writeTimeout) {
+                listener.timedOut.increment();
+                close();
+            }
+        } else if (null == current && !closeAfterFlush) {
+            if (NONE != readingSince) {
+                if (now - readingSince > listener.readTimeout) {
+                    listener.timedOut.increment();
+                    reject(408);
+                }
+            } else if (NONE != idleSince && now - idleSince > listener.idleTimeout) {
+                listener.idleEvicted.increment();
+                close();
+            }
+        }
+    }
+
+    private void interest(final int op, final boolean on) {
+        if (key.isValid()) {
+            final int ops = key.interestOps();
+            key.interestOps(on ? ops | op : ops & ~op);
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        EventLoop.closeQuietly(channel);
+        outbound.clear();
+        decoder.close();
+        if (null != current) {
+            current.releaseRequestBody();
+            current = null;
+            loop.listener.activeExchanges.decrementAndGet();
+        }
+        loop.listener.closed();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.nio;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.nio.channels.SelectionKey.*;
+
+/**
+ * Runs a selector on a dedicated thread and serves the connections registered with it.
+ * Except for {@link #execute(Runnable)}, all methods must be called on the event loop thread.
+ */
+final class EventLoop implements Runnable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The time in nanoseconds to pause accepting connections after accepting a connection has failed, e.g. because
+     * there are too many open files.
+     */
+    private static final long ACCEPT_BACKOFF = 100_000_000L;
+
+    final NioHttpEngine.NioListener listener;
+
+    // Shared by all connections of this event loop:
+    final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private SelectionKey acceptKey;
+    private boolean acceptFailing, acceptBackingOff;
+    private long resumeAcceptingAt;
+
+    EventLoop(final NioHttpEngine.NioListener listener, final int index) throws IOException {
+        this.listener = listener;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "nio-http-" + listener.address.getPort() + "-" + index);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the given task on the event loop thread.
+     * This method may be called from any thread.
+     */
+    void execute(final Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+        } else {
+            tasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    void accept(final ServerSocketChannel channel) throws ClosedChannelException {
+        acceptKey = channel.register(selector, OP_ACCEPT);
+    }
+
+    /**
+     * Resumes accepting connections after the maximum number of connections has been reached or after backing off
+     * from a failure to accept a connection.
+     */
+    void resumeAccepting() {
+        acceptBackingOff = false;
+        if (null != acceptKey && acceptKey.isValid()) {
+            acceptKey.interestOps(OP_ACCEPT);
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        final var log = LoggerFactory.getLogger(EventLoop.class);
+        final var sweepInterval = listener.sweepInterval;
+        var nextSweep = System.nanoTime() + sweepInterval;
+        try {
+            while (running) {
+                final var wakeUp = acceptBackingOff && resumeAcceptingAt - nextSweep < 0
+                        ? resumeAcceptingAt
+                        : nextSweep;
+                selector.select(Math.max(1, (wakeUp - System.nanoTime()) / 1_000_000));
+                runTasks();
+                final var keys = selector.selectedKeys();
+                for (final var key : keys) {
+                    try {
+                        process(key);
+                    } catch (CancelledKeyException ignored) {
+                    } catch (IOException | RuntimeException e) {
+                        if (key == acceptKey) {
+                            pauseAccepting(key, e);
+                        } else {
+                            log.debug("Closing connection:", e);
+                            close(key);
+                        }
+                    }
+                }
+                keys.clear();
+                final var now = System.nanoTime();
+                if (acceptBackingOff && now - resumeAcceptingAt >= 0) {
+                    resumeAccepting();
+                }
+                if (now - nextSweep >= 0) {
+                    sweep(now);
+                    nextSweep = now + sweepInterval;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Event loop failed:", e);
+        } finally {
+            for (final var key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void runTasks() {
+        for (Runnable task; null != (task = tasks.poll()); ) {
+            task.run();
+        }
+    }
+
+    /**
+     * Closes the connections which have exceeded a timeout.
+     */
+    private void sweep(final long now) {
+        for (final var key : selector.keys()) {
+            final var attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                ((Connection) attachment).sweep(now);
+            }
+        }
+    }
+
+    private void process(final SelectionKey key) throws IOException {
+        if (key.isAcceptable()) {
+            while (true) {
+                if (!listener.tryOpen()) {
+                    // Leave further connections in the backlog until another connection gets closed:
+                    key.interestOps(0);
+                    break;
+                }
+                final SocketChannel channel;
+                try {
+                    channel = listener.accept();
+                } catch (IOException e) {
+                    listener.closed();
+                    pauseAccepting(key, e);
+                    break;
+                }
+                if (null == channel) {
+                    listener.closed();
+                    break;
+                }
+                acceptFailing = false;
+                listener.accepted.increment();
+                register(channel);
+            }
+        } else {
+            final var connection = (Connection) key.attachment();
+            if (key.isWritable()) {
+                connection.onWritable();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable();
+            }
+        }
+    }
+
+    /**
+     * Leaves further connections in the backlog for a while after accepting a connection has failed.
+     * Otherwise, the selector would report the pending connection again immediately, so the event loop would spin.
+     * Only the first failure in a row gets logged as a warning.
+     */
+    private void pauseAccepting(final SelectionKey key, final Exception e) {
+        final var log = LoggerFactory.getLogger(EventLoop.class);
+        if (acceptFailing) {
+            log.debug("Cannot accept connection:", e);
+        } else {
+            log.warn("Cannot accept connection, pausing for {} ms:", ACCEPT_BACKOFF / 1_000_000, e);
+            acceptFailing = true;
+        }
+        if (key.isValid()) {
+            key.interestOps(0);
+        }
+        acceptBackingOff = true;
+        resumeAcceptingAt = System.nanoTime() + ACCEPT_BACKOFF;
+    }
+
+    private void register(final SocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            listener.closed();
+            return;
+        }
+        final var loop = listener.nextLoop();
+        loop.execute(() -> {
+            try {
+                final var key = channel.register(loop.selector, OP_READ);
+                key.attach(new Connection(loop, channel, key));
+            } catch (IOException e) {
+                closeQuietly(channel);
+                listener.closed();
+            }
+        });
+    }
+
+    private static void close(final SelectionKey key) {
+        final var attachment = key.attachment();
+        if (attachment instanceof Connection) {
+            ((Connection) attachment).close();
+        } else {
+            key.cancel();
+            closeQuietly(key.channel());
+        }
+    }
+
+    static void closeQuietly(final Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
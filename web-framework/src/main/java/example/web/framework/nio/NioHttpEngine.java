@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.nio;
+
+import example.web.framework.spi.ConnectionMetrics;
+import example.web.framework.spi.ConnectionPolicy;
+import example.web.framework.spi.HttpEngine;
+import example.web.framework.spi.HttpExchangeHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Comparator.reverseOrder;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An engine which is built on {@code java.nio} channels.
+ * It runs one event loop with its own selector per core.
+ * The accepted connections get distributed round-robin across the event loops.
+ * Each connection supports keep-alive and pipelining.
+ * Socket I/O uses direct buffers which are shared by all connections of an event loop.
+ * <p>
+ * Handlers are called on a pool of worker threads, so that a slow handler does not stall the other connections of its
+ * event loop.
+ * The connection does not process any pipelined requests until the exchange gets closed.
+ * If the number of worker threads is zero, then handlers are called on the event loop thread instead, which saves a
+ * context switch per request, but then handlers must never block.
+ * <p>
+ * Request bodies are buffered on the heap up to {@link #REQUEST_BODY_MEMORY_THRESHOLD} bytes, larger ones get spilled to
+ * a temporary file which gets deleted when the exchange gets closed.
+ * Either way, their size is limited.
+ * <p>
+ * This engine manages its connections according to a {@link ConnectionPolicy} and provides {@link ConnectionMetrics}.
+ * The timeouts get checked by each event loop periodically, at least once per second.
+ */
+public class NioHttpEngine implements HttpEngine {
+
+    /**
+     * The default maximum size of a request body in bytes.
+     */
+    public static final int DEFAULT_MAX_REQUEST_BODY_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The maximum size of a request body in bytes which gets buffered on the heap.
+     */
+    public static final int REQUEST_BODY_MEMORY_THRESHOLD = 64 * 1024;
+
+    /**
+     * The default maximum number of worker threads.
+     * Worker threads get started on demand and terminate when they've been idle for a minute.
+     */
+    public static final int DEFAULT_WORKER_THREADS = 200;
+
+    private static final long MIN_SWEEP_INTERVAL = 10_000_000L;
+    private static final long MAX_SWEEP_INTERVAL = 1_000_000_000L;
+
+    private final int eventLoops;
+    private final int workerThreads;
+    private final int maxRequestBodySize;
+    private final ConnectionPolicy connectionPolicy;
+
+    /**
+     * Constructs an engine with one event loop per available processor.
+     */
+    public NioHttpEngine() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_REQUEST_BODY_SIZE);
+    }
+
+    public NioHttpEngine(final int eventLoops, final int maxRequestBodySize) {
+        this(eventLoops, DEFAULT_WORKER_THREADS, maxRequestBodySize);
+    }
+
+    /**
+     * Constructs an engine with the given number of event loops, worker threads and maximum size of a request body.
+     *
+     * @param workerThreads the maximum number of worker threads or zero to call handlers on the event loop thread, in
+     *                      which case they must never block.
+     */
+    public NioHttpEngine(final int eventLoops, final int workerThreads, final int maxRequestBodySize) {
+        this(eventLoops, workerThreads, maxRequestBodySize, ConnectionPolicy.DEFAULT);
+    }
+
+    /**
+     * Constructs an engine with the given number of event loops, worker threads, maximum size of a request body and
+     * policy for managing the connections.
+     *
+     * @param workerThreads the maximum number of worker threads or zero to call handlers on the event loop thread, in
+     *                      which case they must never block.
+     */
+    public NioHttpEngine(
+            final int eventLoops,
+            final int workerThreads,
+            final int maxRequestBodySize,
+            final ConnectionPolicy connectionPolicy
+    ) {
+        if (eventLoops <= 0) {
+            throw new IllegalArgumentException("`eventLoops` needs to be positive.");
+        }
+        if (workerThreads < 0) {
+            throw new IllegalArgumentException("`workerThreads` must not be negative.");
+        }
+        if (maxRequestBodySize < 0) {
+            throw new IllegalArgumentException("`maxRequestBodySize` must not be negative.");
+        }
+        this.eventLoops = eventLoops;
+        this.workerThreads = workerThreads;
+        this.maxRequestBodySize = maxRequestBodySize;
+        this.connectionPolicy = requireNonNull(connectionPolicy);
+    }
+
+    /**
+     * Returns the policy for managing the connections.
+     */
+    public ConnectionPolicy connectionPolicy() {
+        return connectionPolicy;
+    }
+
+    @Override
+    public Listener start(final InetSocketAddress address, final Map<String, HttpExchangeHandler> handlers)
+            throws IOException {
+        final var channel = ServerSocketChannel.open();
+        try {
+            channel.bind(address, 0);
+            channel.configureBlocking(false);
+            return new NioListener(channel, connectionPolicy, handlers);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Accepts a connection from the given channel.
+     * This method gets called on the event loop thread and is overridable for testing.
+     *
+     * @return the new connection or {@code null} if there is no pending connection.
+     */
+    SocketChannel accept(ServerSocketChannel channel) throws IOException {
+        return channel.accept();
+    }
+
+    final class NioListener implements Listener, ConnectionMetrics {
+
+        final ServerSocketChannel channel;
+        final InetSocketAddress address;
+        final EventLoop[] loops;
+        final AtomicInteger activeExchanges = new AtomicInteger();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final int maxRequestBodySize = NioHttpEngine.this.maxRequestBodySize;
+
+        /**
+         * The pool of worker threads or {@code null} if handlers get called on the event loop thread.
+         */
+        final ThreadPoolExecutor workers;
+
+        final int maxConnections;
+        final int maxRequestsPerConnection;
+        final long idleTimeout, readTimeout, writeTimeout, sweepInterval;
+
+        final AtomicInteger open = new AtomicInteger();
+        final LongAdder accepted = new LongAdder();
+        final LongAdder requests = new LongAdder();
+        final LongAdder reused = new LongAdder();
+        final LongAdder idleEvicted = new LongAdder();
+        final LongAdder timedOut = new LongAdder();
+
+        // Sorted by descending context path so that the first match is the longest match:
+        private final TreeMap<String, HttpExchangeHandler> handlers = new TreeMap<>(reverseOrder());
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        NioListener(
+                final ServerSocketChannel channel,
+                final ConnectionPolicy policy,
+                final Map<String, HttpExchangeHandler> handlers
+        ) throws IOException {
+            this.channel = channel;
+            this.address = (InetSocketAddress) channel.getLocalAddress();
+            this.maxConnections = policy.maxConnections();
+            this.maxRequestsPerConnection = policy.maxRequestsPerConnection();
+            this.idleTimeout = policy.idleTimeout().toNanos();
+            this.readTimeout = policy.readTimeout().toNanos();
+            this.writeTimeout = policy.writeTimeout().toNanos();
+            this.sweepInterval = Math.max(MIN_SWEEP_INTERVAL, Math.min(MAX_SWEEP_INTERVAL,
+                    Math.min(idleTimeout, Math.min(readTimeout, writeTimeout)) / 4));
+            this.handlers.putAll(handlers);
+            if (0 < workerThreads) {
+                final var threads = new AtomicInteger();
+                workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), task -> {
+                            final var thread = new Thread(task, "nio-worker-" + threads.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                workers.allowCoreThreadTimeOut(true);
+            } else {
+                workers = null;
+            }
+            loops = new EventLoop[eventLoops];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(this, i);
+            }
+            loops[0].accept(channel);
+            for (final var loop : loops) {
+                loop.start();
+            }
+        }
+
+        EventLoop nextLoop() {
+            return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+        }
+
+        SocketChannel accept() throws IOException {
+            return NioHttpEngine.this.accept(channel);
+        }
+
+        /**
+         * Reserves a slot for a new connection.
+         *
+         * @return {@code false} if the maximum number of connections is open.
+         */
+        boolean tryOpen() {
+            for (int current; (current = open.get()) < maxConnections; ) {
+                if (open.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Releases the slot of a closed connection and resumes accepting connections if they have been paused.
+         */
+        void closed() {
+            if (open.getAndDecrement() == maxConnections) {
+                final var acceptor = loops[0];
+                acceptor.execute(acceptor::resumeAccepting);
+            }
+        }
+
+        @Override
+        public Optional<ConnectionMetrics> connectionMetrics() {
+            return Optional.of(this);
+        }
+
+        @Override
+        public int open() {
+            return open.get();
+        }
+
+        @Override
+        public long accepted() {
+            return accepted.sum();
+        }
+
+        @Override
+        public long requests() {
+            return requests.sum();
+        }
+
+        @Override
+        public long reused() {
+            return reused.sum();
+        }
+
+        @Override
+        public long idleEvicted() {
+            return idleEvicted.sum();
+        }
+
+        @Override
+        public long timedOut() {
+            return timedOut.sum();
+        }
+
+        Map.Entry<String, HttpExchangeHandler> handler(final String path) {
+            for (final var entry : handlers.entrySet()) {
+                if (path.startsWith(entry.getKey())) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress address() {
+            return address;
+        }
+
+        @Override
+        public void stop(final int delay) {
+            if (!stopped.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                final var deadline = System.nanoTime() + delay * 1_000_000_000L;
+                try {
+                    while (activeExchanges.get() > 0 && deadline - System.nanoTime() > 0) {
+                        Thread.sleep(10);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    for (final var loop : loops) {
+                        loop.shutdown();
+                    }
+                    if (null != workers) {
+                        workers.shutdown();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.nio;
+
+import com.sun.net.httpserver.Headers;
+import example.web.framework.spi.HttpExchange;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.Principal;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.Locale.ENGLISH;
+
+final class NioHttpExchange implements HttpExchange {
+
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", ENGLISH);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum size of a mapped region of a file to transfer.
+     */
+    private static final long MAPPING_SIZE = 16 * 1024 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static volatile CachedDate cachedDate = new CachedDate(0);
+
+    private final Connection connection;
+    private final RequestDecoder.Request request;
+    private final String contextPath;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final ResponseBody responseBody = new ResponseBody();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final boolean headRequest;
+    private boolean keepAlive;
+    private volatile boolean responseHeadersSent;
+
+    NioHttpExchange(final Connection connection, final RequestDecoder.Request request, final String contextPath) {
+        this.connection = connection;
+        this.request = request;
+        this.contextPath = contextPath;
+        this.headRequest = "HEAD".equals(request.method);
+        this.keepAlive = request.keepAlive();
+    }
+
+    /**
+     * Deletes the temporary file of the request body, if any.
+     */
+    void releaseRequestBody() {
+        request.close();
+    }
+
+    boolean keepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Asks the client to close the connection after the response to this exchange.
+     * This method must be called before sending the response headers.
+     */
+    void disableKeepAlive() {
+        keepAlive = false;
+    }
+
+    @Override
+    public String contextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return connection.localAddress;
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return connection.remoteAddress;
+    }
+
+    @Override
+    public Optional<Principal> principal() {
+        return Optional.empty();
+    }
+
+    @Override
+    public String protocol() {
+        return request.protocol;
+    }
+
+    @Override
+    public String requestMethod() {
+        return request.method;
+    }
+
+    @Override
+    public URI requestURI() {
+        return request.uri;
+    }
+
+    @Override
+    public Headers requestHeaders() {
+        return request.headers;
+    }
+
+    @Override
+    public InputStream requestBody() {
+        return request.bodyStream();
+    }
+
+    @Override
+    public Headers responseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public void sendResponseHeaders(final int statusCode, final long responseLength) throws IOException {
+        if (responseHeadersSent) {
+            throw new IOException("Response headers already sent.");
+        }
+        if ("close".equalsIgnoreCase(responseHeaders.getFirst("Connection"))) {
+            keepAlive = false;
+        }
+        final var s = new StringBuilder(256)
+                .append("HTTP/1.1 ").append(statusCode).append(' ').append(reasonPhrase(statusCode)).append("\r\n")
+                .append("Date: ").append(date()).append("\r\n");
+        // Like the JDK engine, keep the content length of a response to a HEAD request if it has been set explicitly:
+        final var headLength = headRequest && -1 == responseLength
+                ? responseHeaders.getFirst("Content-length")
+                : null;
+        responseHeaders.forEach((name, values) -> {
+            if (!"Content-length".equals(name) && !"Transfer-encoding".equals(name) && !"Connection".equals(name)) {
+                for (final var value : values) {
+                    s.append(name).append(": ").append(value).append("\r\n");
+                }
+            }
+        });
+        final boolean noContent = statusCode < 200 || 204 == statusCode || 304 == statusCode;
+        if (responseLength > 0) {
+            s.append("Content-length: ").append(responseLength).append("\r\n");
+            responseBody.remaining = headRequest ? 0 : responseLength;
+        } else if (0 == responseLength && !noContent && !headRequest) {
+            s.append("Transfer-encoding: chunked\r\n");
+            responseBody.chunked = true;
+        } else if (null != headLength) {
+            s.append("Content-length: ").append(headLength).append("\r\n");
+        } else if (!noContent) {
+            s.append("Content-length: 0\r\n");
+        }
+        if (!keepAlive) {
+            s.append("Connection: close\r\n");
+        }
+        s.append("\r\n");
+        responseBody.statusAndHeaders = s.toString().getBytes(ISO_8859_1);
+        responseHeadersSent = true;
+    }
+
+    @Override
+    public boolean responseHeadersSent() {
+        return responseHeadersSent;
+    }
+
+    @Override
+    public OutputStream responseBody() {
+        return responseBody;
+    }
+
+    /**
+     * Enqueues read-only mappings of the given region, which the event loop writes to the socket channel without
+     * copying them.
+     */
+    @Override
+    public void transferFrom(final FileChannel file, long position, long count) throws IOException {
+        responseBody.transferFrom(file, position, count);
+    }
+
+    /**
+     * Enqueues the given bytes without blocking unless too much output is pending for the client.
+     */
+    @Override
+    public boolean tryWrite(final byte[] b) throws IOException {
+        if (connection.congested()) {
+            return false;
+        }
+        responseBody.append(b, 0, b.length);
+        responseBody.send(false, false);
+        return true;
+    }
+
+    @Override
+    public boolean inIoThread() {
+        return connection.loop.inEventLoop();
+    }
+
+    @Override
+    public Map<String, Object> attributes() {
+        return attributes;
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        request.close();
+        try {
+            responseBody.close();
+        } catch (IOException e) {
+            keepAlive = false;
+        }
+        if (!responseHeadersSent || 0 < responseBody.remaining) {
+            // The response is incomplete, so the connection cannot be reused:
+            keepAlive = false;
+        }
+        connection.loop.execute(() -> connection.completed(this));
+    }
+
+    private final class ResponseBody extends OutputStream {
+
+        byte[] statusAndHeaders;
+        boolean chunked;
+        long remaining;
+
+        private byte[] buffer = new byte[0];
+        private int count;
+        private boolean closed;
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            append(b, off, len);
+            if (count >= BUFFER_SIZE) {
+                flush();
+            }
+        }
+
+        void append(final byte[] b, final int off, final int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed.");
+            }
+            if (!responseHeadersSent) {
+                throw new IOException("Response headers not sent.");
+            }
+            if (headRequest) {
+                return;
+            }
+            if (!chunked) {
+                if (len > remaining) {
+                    throw new IOException("Too many bytes to write to stream.");
+                }
+                remaining -= len;
+            }
+            if (buffer.length < count + len) {
+                buffer = Arrays.copyOf(buffer, Math.max(count + len, Math.min(2 * buffer.length, BUFFER_SIZE)));
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        void transferFrom(final FileChannel file, long position, long count) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed.");
+            }
+            if (!responseHeadersSent) {
+                throw new IOException("Response headers not sent.");
+            }
+            if (headRequest || 0 == count) {
+                return;
+            }
+            if (!chunked) {
+                if (count > remaining) {
+                    throw new IOException("Too many bytes to write to stream.");
+                }
+                remaining -= count;
+            }
+            if (file.size() < position + count) {
+                throw new EOFException();
+            }
+            send(false, true);
+            if (chunked) {
+                connection.enqueue(ByteBuffer.wrap((Long.toHexString(count) + "\r\n").getBytes(ISO_8859_1)));
+            }
+            while (0 < count) {
+                final long n = Math.min(count, MAPPING_SIZE);
+                connection.enqueue(file.map(READ_ONLY, position, n));
+                position += n;
+                count -= n;
+            }
+            if (chunked) {
+                connection.enqueue(ByteBuffer.wrap(CRLF));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed || !responseHeadersSent) {
+                return;
+            }
+            send(false, true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (responseHeadersSent) {
+                send(true, true);
+            }
+            closed = true;
+        }
+
+        void send(final boolean last, final boolean block) throws IOException {
+            final int headLength = null != statusAndHeaders ? statusAndHeaders.length : 0;
+            if (0 == headLength && 0 == count && !(last && chunked)) {
+                return;
+            }
+            final byte[] prefix = chunked && 0 < count
+                    ? (Integer.toHexString(count) + "\r\n").getBytes(ISO_8859_1)
+                    : new byte[0];
+            final byte[] suffix = chunked
+                    ? (0 < count ? last ? "\r\n0\r\n\r\n" : "\r\n" : last ? "0\r\n\r\n" : "").getBytes(ISO_8859_1)
+                    : new byte[0];
+            final var output = ByteBuffer.allocate(headLength + prefix.length + count + suffix.length);
+            if (0 < headLength) {
+                output.put(statusAndHeaders);
+                statusAndHeaders = null;
+            }
+            output.put(prefix).put(buffer, 0, count).put(suffix).flip();
+            count = 0;
+            connection.enqueue(output, block);
+        }
+    }
+
+    private static String date() {
+        final long now = System.currentTimeMillis() / 1000;
+        var date = cachedDate;
+        if (date.second != now) {
+            cachedDate = date = new CachedDate(now);
+        }
+        return date.value;
+    }
+
+    private static final class CachedDate {
+
+        final long second;
+        final String value;
+
+        CachedDate(final long second) {
+            this.second = second;
+            this.value = DATE_FORMAT.format(ZonedDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneOffset.UTC));
+        }
+    }
+
+    static String reasonPhrase(final int statusCode) {
+        switch (statusCode) {
+            case 100: return "Continue";
+            case 200: return "OK";
+            case 201: return "Created";
+            case 202: return "Accepted";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 301: return "Moved Permanently";
+            case 302: return "Found";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 406: return "Not Acceptable";
+            case 408: return "Request Timeout";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 416: return "Range Not Satisfiable";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "";
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.nio;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.file.StandardOpenOption.*;
+import static java.util.Locale.ENGLISH;
+
+/**
+ * Decodes HTTP/1.1 requests from a heap buffer incrementally.
+ * The decoder consumes the request head once it's complete and then consumes the body as it arrives, so that each
+ * byte gets scanned and copied only once and the buffer does not need to hold more than the request head.
+ * The state of a partially decoded request is kept between calls to {@link #decode(ByteBuffer)}.
+ * <p>
+ * Request bodies up to the memory threshold are kept on the heap, larger ones get spilled to a temporary file which
+ * gets deleted when the {@linkplain Request#close() request is closed}.
+ */
+final class RequestDecoder {
+
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final int INITIAL_CHUNKED_BODY_SIZE = 8 * 1024;
+
+    // The states of the body decoder:
+    private static final int FIXED = 0, CHUNK_SIZE = 1, CHUNK_DATA = 2, CHUNK_END = 3, TRAILER = 4;
+
+    private final int maxBodySize;
+    private final int memoryThreshold;
+
+    /**
+     * Whether the last call to {@link #decode(ByteBuffer)} found a complete request head with the header
+     * {@code Expect: 100-continue}, but an incomplete body.
+     */
+    boolean expectsContinue;
+
+    // The number of bytes of the request head which have been scanned for the empty line so far:
+    private int scanned;
+
+    // The state of the request in progress, if its head is complete:
+    private Request head;
+    private int state;
+    private byte[] body;
+    private FileChannel file;
+    private int size;
+    private int remaining;
+
+    RequestDecoder(final int maxBodySize, final int memoryThreshold) {
+        this.maxBodySize = maxBodySize;
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     * Decodes the next request from the given buffer in read mode.
+     * The position of the buffer gets advanced past the consumed bytes.
+     * If the request is complete, then it's returned.
+     * Otherwise, {@code null} is returned and the decoder awaits more bytes in the next call.
+     */
+    Request decode(final ByteBuffer buffer) throws RequestException {
+        expectsContinue = false;
+        if (null == head && !decodeHead(buffer)) {
+            return null;
+        }
+        if (!(FIXED == state ? decodeFixed(buffer) : decodeChunked(buffer))) {
+            expectsContinue = "100-continue".equalsIgnoreCase(head.headers.getFirst("Expect"));
+            return null;
+        }
+        final var request = null != file
+                ? new Request(head.method, head.uri, head.protocol, head.headers, null, file, size)
+                : new Request(head.method, head.uri, head.protocol, head.headers,
+                        body.length == size ? body : Arrays.copyOf(body, size), null, size);
+        head = null;
+        body = null;
+        file = null;
+        size = 0;
+        return request;
+    }
+
+    private boolean decodeHead(final ByteBuffer buffer) throws RequestException {
+        final byte[] b = buffer.array();
+        final int start = buffer.arrayOffset() + buffer.position();
+        final int limit = buffer.arrayOffset() + buffer.limit();
+        final int end = indexOfEmptyLine(b, Math.max(start, start + scanned - 3), limit);
+        if (end < 0) {
+            scanned = limit - start;
+            if (scanned > MAX_HEADER_SIZE) {
+                throw new RequestException(431, "Request header fields too large.");
+            }
+            return false;
+        }
+        scanned = 0;
+        final var lines = new String(b, start, end - start, ISO_8859_1).split("\r\n");
+        final var requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new RequestException(400, "Malformed request line.");
+        }
+        final URI uri;
+        try {
+            uri = new URI(requestLine[1]);
+        } catch (URISyntaxException e) {
+            throw new RequestException(400, "Malformed request URI.");
+        }
+        final var headers = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            final var line = lines[i];
+            final int colon = line.indexOf(':');
+            if (colon <= 0 || Character.isWhitespace(line.charAt(0))) {
+                throw new RequestException(400, "Malformed header field.");
+            }
+            headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        }
+        final var transferEncoding = headers.getFirst("Transfer-Encoding");
+        if (null != transferEncoding) {
+            if (!transferEncoding.toLowerCase(ENGLISH).endsWith("chunked")) {
+                throw new RequestException(501, "Unsupported transfer encoding.");
+            }
+            state = CHUNK_SIZE;
+            body = new byte[Math.min(INITIAL_CHUNKED_BODY_SIZE, Math.min(memoryThreshold, maxBodySize))];
+        } else {
+            final var contentLength = headers.getFirst("Content-Length");
+            final long length;
+            try {
+                length = null == contentLength ? 0 : Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                throw new RequestException(400, "Malformed content length.");
+            }
+            if (length < 0) {
+                throw new RequestException(400, "Malformed content length.");
+            }
+            if (length > maxBodySize) {
+                throw new RequestException(413, "Request body too large.");
+            }
+            state = FIXED;
+            if (length > memoryThreshold) {
+                body = new byte[0];
+                spill();
+            } else {
+                body = new byte[(int) length];
+            }
+            remaining = (int) length;
+        }
+        buffer.position(end + 4 - buffer.arrayOffset());
+        head = new Request(requestLine[0], uri, requestLine[2], headers, null, null, 0);
+        return true;
+    }
+
+    /**
+     * Consumes the body bytes which are available and returns {@code true} if the body is complete.
+     */
+    private boolean decodeFixed(final ByteBuffer buffer) throws RequestException {
+        copy(buffer);
+        return 0 == remaining;
+    }
+
+    /**
+     * Consumes the complete chunk size lines, chunk data and trailer lines which are available and returns
+     * {@code true} if the body is complete.
+     */
+    private boolean decodeChunked(final ByteBuffer buffer) throws RequestException {
+        while (true) {
+            switch (state) {
+                case CHUNK_SIZE: {
+                    var sizeLine = line(buffer);
+                    if (null == sizeLine) {
+                        return false;
+                    }
+                    final int semicolon = sizeLine.indexOf(';');
+                    if (semicolon >= 0) {
+                        sizeLine = sizeLine.substring(0, semicolon);
+                    }
+                    final int chunkSize;
+                    try {
+                        chunkSize = Integer.parseInt(sizeLine.trim(), 16);
+                    } catch (NumberFormatException e) {
+                        throw new RequestException(400, "Malformed chunk size.");
+                    }
+                    if (chunkSize < 0 || (long) size + chunkSize > maxBodySize) {
+                        throw new RequestException(413, "Request body too large.");
+                    }
+                    if (0 == chunkSize) {
+                        state = TRAILER;
+                    } else {
+                        if (null == file && body.length < size + chunkSize) {
+                            if (size + chunkSize > memoryThreshold) {
+                                spill();
+                            } else {
+                                body = Arrays.copyOf(body,
+                                        (int) Math.min(memoryThreshold, Math.max(size + chunkSize, 2L * body.length)));
+                            }
+                        }
+                        remaining = chunkSize;
+                        state = CHUNK_DATA;
+                    }
+                    break;
+                }
+                case CHUNK_DATA:
+                    copy(buffer);
+                    if (0 < remaining) {
+                        return false;
+                    }
+                    state = CHUNK_END;
+                    break;
+                case CHUNK_END:
+                    if (buffer.remaining() < 2) {
+                        return false;
+                    }
+                    if ('\r' != buffer.get() || '\n' != buffer.get()) {
+                        throw new RequestException(400, "Malformed chunk.");
+                    }
+                    state = CHUNK_SIZE;
+                    break;
+                default: {
+                    // Skip any trailer fields:
+                    final var trailer = line(buffer);
+                    if (null == trailer) {
+                        return false;
+                    }
+                    if (trailer.isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the head of a request has been consumed, but its body is incomplete.
+     */
+    boolean inProgress() {
+        return null != head;
+    }
+
+    /**
+     * Releases the temporary file of the request in progress, if any.
+     */
+    void close() {
+        if (null != file) {
+            Request.closeQuietly(file);
+            file = null;
+        }
+        head = null;
+        body = null;
+        size = 0;
+    }
+
+    private void copy(final ByteBuffer buffer) throws RequestException {
+        final int n = Math.min(remaining, buffer.remaining());
+        if (null != file) {
+            final var slice = buffer.duplicate();
+            slice.limit(slice.position() + n);
+            try {
+                while (slice.hasRemaining()) {
+                    file.write(slice);
+                }
+            } catch (IOException e) {
+                throw new RequestException(500, "Cannot spill request body.");
+            }
+            buffer.position(slice.position());
+        } else {
+            buffer.get(body, size, n);
+        }
+        size += n;
+        remaining -= n;
+    }
+
+    /**
+     * Moves the body bytes which have been consumed so far to a new temporary file and appends any further body bytes
+     * to it.
+     */
+    private void spill() throws RequestException {
+        try {
+            // The file gets deleted when the channel gets closed:
+            file = FileChannel.open(Files.createTempFile("nio-request-body", ".tmp"), READ, WRITE, DELETE_ON_CLOSE);
+            final var consumed = ByteBuffer.wrap(body, 0, size);
+            while (consumed.hasRemaining()) {
+                file.write(consumed);
+            }
+        } catch (IOException e) {
+            close();
+            throw new RequestException(500, "Cannot spill request body.");
+        }
+        body = null;
+    }
+
+    /**
+     * Consumes the next line and returns it without its line terminator, or returns {@code null} if it's incomplete.
+     */
+    private static String line(final ByteBuffer buffer) throws RequestException {
+        final byte[] b = buffer.array();
+        final int start = buffer.arrayOffset() + buffer.position();
+        final int limit = buffer.arrayOffset() + buffer.limit();
+        final int eol = indexOfCrLf(b, start, limit);
+        if (eol < 0) {
+            if (limit - start > MAX_HEADER_SIZE) {
+                throw new RequestException(431, "Request header fields too large.");
+            }
+            return null;
+        }
+        buffer.position(eol + 2 - buffer.arrayOffset());
+        return new String(b, start, eol - start, ISO_8859_1);
+    }
+
+    private static int indexOfEmptyLine(final byte[] b, final int start, final int limit) {
+        for (int i = start; i <= limit - 4; i++) {
+            if (b[i] == '\r' && b[i + 1] == '\n' && b[i + 2] == '\r' && b[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfCrLf(final byte[] b, final int start, final int limit) {
+        for (int i = start; i < limit - 1; i++) {
+            if (b[i] == '\r' && b[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static final class Request {
+
+        final String method;
+        final URI uri;
+        final String protocol;
+        final Headers headers;
+
+        /**
+         * The body if it's kept on the heap, otherwise {@code null}.
+         */
+        final byte[] body;
+
+        /**
+         * The temporary file which holds the body if it has been spilled, otherwise {@code null}.
+         */
+        final FileChannel file;
+
+        final long size;
+
+        Request(
+                String method,
+                URI uri,
+                String protocol,
+                Headers headers,
+                byte[] body,
+                FileChannel file,
+                long size
+        ) {
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.body = body;
+            this.file = file;
+            this.size = size;
+        }
+
+        /**
+         * Returns a new stream for reading the body from the start.
+         */
+        InputStream bodyStream() {
+            if (null != body) {
+                return new ByteArrayInputStream(body);
+            }
+            return new InputStream() {
+
+                long position;
+
+                @Override
+                public int read() throws IOException {
+                    final var b = new byte[1];
+                    return 1 == read(b, 0, 1) ? b[0] & 0xff : -1;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    if (0 == len) {
+                        return 0;
+                    }
+                    if (position >= size) {
+                        return -1;
+                    }
+                    // Positional reads don't depend on the position of the channel:
+                    final int n = file.read(ByteBuffer.wrap(b, off, (int) Math.min(len, size - position)), position);
+                    if (0 < n) {
+                        position += n;
+                    }
+                    return n;
+                }
+
+                @Override
+                public int available() {
+                    return (int) Math.min(Integer.MAX_VALUE, size - position);
+                }
+            };
+        }
+
+        /**
+         * Deletes the temporary file of the body, if any.
+         */
+        void close() {
+            if (null != file) {
+                closeQuietly(file);
+            }
+        }
+
+        static void closeQuietly(final FileChannel file) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        boolean keepAlive() {
+            final var connection = headers.getFirst("Connection");
+            if ("HTTP/1.0".equals(protocol)) {
+                return null != connection && "keep-alive".equalsIgnoreCase(connection.trim());
+            } else {
+                return null == connection || !"close".equalsIgnoreCase(connection.trim());
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.nio;
+
+import java.io.IOException;
+
+/**
+ * Indicates a malformed or unacceptable request which gets answered with the given status code before the connection
+ * gets closed.
+ */
+final class RequestException extends IOException {
+
+    private static final long serialVersionUID = 0L;
+
+    final int statusCode;
+
+    RequestException(final int statusCode, final String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.spi;
+
+/**
+ * Counters for the connections of a running engine.
+ * The ratio {@code reused() / requests()} is the keep-alive reuse rate.
+ */
+public interface ConnectionMetrics {
+
+    /**
+     * Returns the number of currently open connections.
+     */
+    int open();
+
+    /**
+     * Returns the total number of accepted connections.
+     */
+    long accepted();
+
+    /**
+     * Returns the total number of dispatched requests.
+     */
+    long requests();
+
+    /**
+     * Returns the total number of requests which have been dispatched on a connection which has served a previous
+     * request.
+     */
+    long reused();
+
+    /**
+     * Returns the total number of connections which have been closed because they exceeded the idle timeout.
+     */
+    long idleEvicted();
+
+    /**
+     * Returns the total number of connections which have been closed because they exceeded the read or write timeout.
+     */
+    long timedOut();
+}
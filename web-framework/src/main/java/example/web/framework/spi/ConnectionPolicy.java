@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.spi;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * An immutable configuration for managing the connections of a server.
+ * The {@linkplain #DEFAULT default policy} and any policy equal to it are supported by all engines.
+ * Other policies are only supported by engines which override
+ * {@link HttpEngine#start(java.net.InetSocketAddress, ConnectionPolicy, java.util.Map)}, e.g.
+ * {@link example.web.framework.nio.NioHttpEngine}.
+ */
+public final class ConnectionPolicy {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 10_000;
+
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+    public static final int DEFAULT_MAX_REQUESTS_PER_CONNECTION = Integer.MAX_VALUE;
+
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+
+    public static final Duration DEFAULT_WRITE_TIMEOUT = Duration.ofSeconds(30);
+
+    public static final ConnectionPolicy DEFAULT = new ConnectionPolicy(DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT,
+            DEFAULT_MAX_REQUESTS_PER_CONNECTION, DEFAULT_READ_TIMEOUT, DEFAULT_WRITE_TIMEOUT);
+
+    private final int maxConnections;
+    private final Duration idleTimeout;
+    private final int maxRequestsPerConnection;
+    private final Duration readTimeout;
+    private final Duration writeTimeout;
+
+    private ConnectionPolicy(
+            final int maxConnections,
+            final Duration idleTimeout,
+            final int maxRequestsPerConnection,
+            final Duration readTimeout,
+            final Duration writeTimeout
+    ) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("`maxConnections` needs to be positive.");
+        }
+        this.maxConnections = maxConnections;
+        this.idleTimeout = positive(idleTimeout, "idleTimeout");
+        if (maxRequestsPerConnection <= 0) {
+            throw new IllegalArgumentException("`maxRequestsPerConnection` needs to be positive.");
+        }
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.readTimeout = positive(readTimeout, "readTimeout");
+        this.writeTimeout = positive(writeTimeout, "writeTimeout");
+    }
+
+    private static Duration positive(final Duration timeout, final String name) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("`" + name + "` needs to be positive.");
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns a policy with the given maximum number of open connections.
+     * When it's reached, the server stops accepting connections until another connection gets closed, so that new
+     * connections wait in the backlog of the server socket.
+     */
+    public ConnectionPolicy withMaxConnections(int maxConnections) {
+        return new ConnectionPolicy(maxConnections, idleTimeout, maxRequestsPerConnection, readTimeout, writeTimeout);
+    }
+
+    /**
+     * Returns a policy with the given timeout for closing connections which have no request in progress.
+     */
+    public ConnectionPolicy withIdleTimeout(Duration idleTimeout) {
+        return new ConnectionPolicy(maxConnections, idleTimeout, maxRequestsPerConnection, readTimeout, writeTimeout);
+    }
+
+    /**
+     * Returns a policy with the given maximum number of requests per connection.
+     * The response to the last request asks the client to close the connection, which spreads long-lived clients
+     * across the servers behind a load balancer.
+     */
+    public ConnectionPolicy withMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        return new ConnectionPolicy(maxConnections, idleTimeout, maxRequestsPerConnection, readTimeout, writeTimeout);
+    }
+
+    /**
+     * Returns a policy with the given timeout for receiving a request once its first bytes have arrived.
+     * If it expires, then the status code {@code 408} gets sent and the connection gets closed.
+     */
+    public ConnectionPolicy withReadTimeout(Duration readTimeout) {
+        return new ConnectionPolicy(maxConnections, idleTimeout, maxRequestsPerConnection, readTimeout, writeTimeout);
+    }
+
+    /**
+     * Returns a policy with the given timeout for pending output which the client does not accept.
+     * If it expires, then the connection gets closed.
+     */
+    public ConnectionPolicy withWriteTimeout(Duration writeTimeout) {
+        return new ConnectionPolicy(maxConnections, idleTimeout, maxRequestsPerConnection, readTimeout, writeTimeout);
+    }
+
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    public Duration idleTimeout() {
+        return idleTimeout;
+    }
+
+    public int maxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public Duration readTimeout() {
+        return readTimeout;
+    }
+
+    public Duration writeTimeout() {
+        return writeTimeout;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConnectionPolicy)) {
+            return false;
+        }
+        final var that = (ConnectionPolicy) obj;
+        return this.maxConnections == that.maxConnections &&
+                this.idleTimeout.equals(that.idleTimeout) &&
+                this.maxRequestsPerConnection == that.maxRequestsPerConnection &&
+                this.readTimeout.equals(that.readTimeout) &&
+                this.writeTimeout.equals(that.writeTimeout);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxConnections, idleTimeout, maxRequestsPerConnection, readTimeout, writeTimeout);
+    }
+}
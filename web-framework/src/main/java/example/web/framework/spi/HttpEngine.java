@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.spi;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A server engine which accepts HTTP/1.1 connections and dispatches the exchanges to handlers.
+ * The default engine is {@link example.web.framework.jdk.JdkHttpEngine}.
+ */
+public interface HttpEngine {
+
+    /**
+     * Binds to the given socket address and starts dispatching exchanges.
+     *
+     * @param address the socket address to bind to.
+     *                If the port is zero, then an ephemeral port is chosen.
+     * @param handlers maps context paths to exchange handlers.
+     *                 Each exchange is dispatched to the handler with the longest context path which is a prefix of the
+     *                 request URI path.
+     */
+    Listener start(InetSocketAddress address, Map<String, HttpExchangeHandler> handlers) throws IOException;
+
+    /**
+     * Like {@link #start(InetSocketAddress, Map)}, but serves HTTPS according to the given TLS policy.
+     * The default implementation throws an {@link UnsupportedOperationException}.
+     */
+    default Listener startTls(InetSocketAddress address, TlsPolicy policy, Map<String, HttpExchangeHandler> handlers)
+            throws IOException {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support TLS.");
+    }
+
+    /**
+     * A running engine.
+     */
+    interface Listener {
+
+        /**
+         * Returns the socket address this listener is bound to.
+         */
+        InetSocketAddress address();
+
+        /**
+         * Returns the connection metrics, if supported by the engine, e.g. by an engine which manages its connections
+         * according to a {@link ConnectionPolicy}.
+         */
+        default Optional<ConnectionMetrics> connectionMetrics() {
+            return Optional.empty();
+        }
+
+        /**
+         * Stops accepting new connections and waits up to the given number of seconds for exchanges in progress to
+         * complete.
+         * Calling this method more than once has no effect.
+         */
+        void stop(int delay);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.spi;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.Principal;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An HTTP request and its response as seen by a server engine.
+ * The class {@link Headers} is just used as a case-insensitive multi-valued map, so engines are free to create their
+ * own instances.
+ */
+public interface HttpExchange extends AutoCloseable {
+
+    /**
+     * Returns the context path of the handler which this exchange has been dispatched to.
+     */
+    String contextPath();
+
+    InetSocketAddress localAddress();
+
+    InetSocketAddress remoteAddress();
+
+    /**
+     * Returns the authenticated principal, if any.
+     */
+    Optional<Principal> principal();
+
+    /**
+     * Returns the request protocol, e.g. {@code HTTP/1.1}.
+     */
+    String protocol();
+
+    String requestMethod();
+
+    URI requestURI();
+
+    Headers requestHeaders();
+
+    InputStream requestBody();
+
+    Headers responseHeaders();
+
+    /**
+     * Sends the response status line and headers.
+     * This method must be called exactly once before writing to the {@linkplain #responseBody() response body}.
+     *
+     * @param statusCode the response status code.
+     * @param responseLength if positive, the exact number of bytes of the response body;
+     *                       if zero, the response body is streamed using chunked transfer encoding;
+     *                       if {@code -1}, there is no response body.
+     */
+    void sendResponseHeaders(int statusCode, long responseLength) throws IOException;
+
+    /**
+     * Returns {@code true} if and only if the response headers have been sent.
+     */
+    boolean responseHeadersSent();
+
+    OutputStream responseBody();
+
+    /**
+     * Writes the given region of the given file to the {@linkplain #responseBody() response body}.
+     * The default implementation transfers the region through a small buffer, so the heap usage does not depend on the
+     * size of the region.
+     * Engines should override this method if they can write the region without copying it onto the heap at all.
+     *
+     * @throws EOFException if the file is shorter than the end of the region.
+     */
+    default void transferFrom(final FileChannel file, long position, long count) throws IOException {
+        final var out = Channels.newChannel(responseBody());
+        while (0 < count) {
+            final long n = file.transferTo(position, count, out);
+            if (n <= 0) {
+                throw new EOFException();
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Writes the given bytes to the {@linkplain #responseBody() response body} and flushes it without blocking while
+     * the client is slow.
+     * If too much output is already pending for the client, then nothing gets written and {@code false} is returned,
+     * so that the caller can apply its own overflow policy.
+     * The default implementation writes to the response body and flushes it, which may block, and returns
+     * {@code true}.
+     * Engines should override this method if they buffer output for slow clients.
+     */
+    default boolean tryWrite(final byte[] b) throws IOException {
+        final var out = responseBody();
+        out.write(b);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the current thread is an I/O thread of the engine, e.g. an event loop.
+     * Such a thread must not get interrupted because this would close the channels it's using.
+     * The default implementation returns {@code false}.
+     */
+    default boolean inIoThread() {
+        return false;
+    }
+
+    /**
+     * Returns a mutable map of attributes which is private to this exchange.
+     */
+    Map<String, Object> attributes();
+
+    /**
+     * Completes this exchange.
+     * Any unread request body is drained and the response body is closed.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,16 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.spi;
+
+import java.io.IOException;
+
+/**
+ * Handles an HTTP exchange.
+ * The handler is responsible for {@linkplain HttpExchange#close() closing} the exchange.
+ */
+public interface HttpExchangeHandler {
+
+    void handle(HttpExchange exchange) throws IOException;
+}
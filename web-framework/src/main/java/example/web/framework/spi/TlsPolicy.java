@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.spi;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.time.Duration;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An immutable configuration for serving HTTPS.
+ * By default, it prefers TLS 1.3 with AES-GCM and ChaCha20-Poly1305 cipher suites and enables the server session
+ * cache so that clients can resume sessions without a full handshake.
+ * <p>
+ * Note that on JDK 13 or later, the server resumes TLS 1.3 sessions from stateless session tickets by default, see the
+ * system property {@code jdk.tls.server.enableSessionTicketExtension}.
+ * Then the session cache size does not limit resumption for TLS 1.3 clients, only the session timeout applies.
+ * On JDK 11 and 12, and for TLS 1.2 clients without session ticket support, the server session cache is used.
+ */
+public final class TlsPolicy {
+
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 10_000;
+
+    public static final Duration DEFAULT_SESSION_TIMEOUT = Duration.ofHours(1);
+
+    public static final List<String> DEFAULT_PROTOCOLS = List.of("TLSv1.3", "TLSv1.2");
+
+    // TLS 1.3 suites first, followed by forward secret AEAD suites for TLS 1.2 clients:
+    public static final List<String> DEFAULT_CIPHER_SUITES = List.of(
+            "TLS_AES_128_GCM_SHA256",
+            "TLS_AES_256_GCM_SHA384",
+            "TLS_CHACHA20_POLY1305_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+            "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256"
+    );
+
+    private final SSLContext context;
+    private final int sessionCacheSize;
+    private final Duration sessionTimeout;
+    private final List<String> protocols;
+    private final List<String> cipherSuites;
+
+    private TlsPolicy(
+            final SSLContext context,
+            final int sessionCacheSize,
+            final Duration sessionTimeout,
+            final List<String> protocols,
+            final List<String> cipherSuites) {
+        this.context = requireNonNull(context);
+        if (sessionCacheSize < 0) {
+            throw new IllegalArgumentException("`sessionCacheSize` must not be negative.");
+        }
+        this.sessionCacheSize = sessionCacheSize;
+        if (sessionTimeout.isNegative() || sessionTimeout.getSeconds() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("`sessionTimeout` is out of range.");
+        }
+        this.sessionTimeout = sessionTimeout;
+        this.protocols = List.copyOf(protocols);
+        this.cipherSuites = List.copyOf(cipherSuites);
+    }
+
+    /**
+     * Returns a policy with the default settings for the given SSL context.
+     */
+    public static TlsPolicy of(SSLContext context) {
+        return new TlsPolicy(context, DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIMEOUT, DEFAULT_PROTOCOLS,
+                DEFAULT_CIPHER_SUITES);
+    }
+
+    /**
+     * Returns a policy with the given maximum number of cached server sessions.
+     * Zero means unlimited.
+     * This has no effect on stateless TLS 1.3 session tickets, see the class documentation.
+     */
+    public TlsPolicy withSessionCacheSize(int sessionCacheSize) {
+        return new TlsPolicy(context, sessionCacheSize, sessionTimeout, protocols, cipherSuites);
+    }
+
+    /**
+     * Returns a policy with the given timeout for cached server sessions.
+     * Zero means unlimited.
+     */
+    public TlsPolicy withSessionTimeout(Duration sessionTimeout) {
+        return new TlsPolicy(context, sessionCacheSize, sessionTimeout, protocols, cipherSuites);
+    }
+
+    /**
+     * Returns a policy with the given protocols in order of preference.
+     * Protocols which are not supported by the SSL context are ignored.
+     */
+    public TlsPolicy withProtocols(String... protocols) {
+        return new TlsPolicy(context, sessionCacheSize, sessionTimeout, List.of(protocols), cipherSuites);
+    }
+
+    /**
+     * Returns a policy with the given cipher suites in order of preference.
+     * Cipher suites which are not supported by the SSL context are ignored.
+     */
+    public TlsPolicy withCipherSuites(String... cipherSuites) {
+        return new TlsPolicy(context, sessionCacheSize, sessionTimeout, protocols, List.of(cipherSuites));
+    }
+
+    public int sessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public Duration sessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Returns the SSL context after applying the session cache settings to it.
+     */
+    public SSLContext sslContext() {
+        final var sessions = context.getServerSessionContext();
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout((int) sessionTimeout.getSeconds());
+        return context;
+    }
+
+    /**
+     * Returns new SSL parameters with the supported subset of the configured protocols and cipher suites.
+     * The server's cipher suite order takes precedence over the client's.
+     */
+    public SSLParameters sslParameters() {
+        final var supported = context.getSupportedSSLParameters();
+        final var parameters = context.getDefaultSSLParameters();
+        final var p = supportedSubset(protocols, supported.getProtocols());
+        if (0 < p.length) {
+            parameters.setProtocols(p);
+        }
+        final var c = supportedSubset(cipherSuites, supported.getCipherSuites());
+        if (0 < c.length) {
+            parameters.setCipherSuites(c);
+        }
+        parameters.setUseCipherSuitesOrder(true);
+        return parameters;
+    }
+
+    private static String[] supportedSubset(List<String> preferred, String[] supported) {
+        final var s = List.of(supported);
+        return preferred.stream().filter(s::contains).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.util.concurrent.CountDownLatch
+
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+class BulkheadSpec extends WordSpec {
+
+  "A bulkhead" should {
+    "queue calls beyond its concurrency limit and reject calls beyond its queue size" in {
+      val bulkhead = Bulkhead.of("test", 1, 1)
+      val gate = new CountDownLatch(1)
+      val done = new CountDownLatch(2)
+      val task: Runnable = () => {
+        gate.await()
+        done.countDown()
+      }
+      bulkhead.execute(task) shouldBe true
+      bulkhead.execute(task) shouldBe true
+      bulkhead.execute(task) shouldBe false
+      bulkhead.queuedCalls shouldBe 1
+      bulkhead.rejections shouldBe 1
+      gate.countDown()
+      done.await()
+    }
+
+    "reject invalid limits" in {
+      intercept[IllegalArgumentException](Bulkhead.of("test", 0, 0))
+      intercept[IllegalArgumentException](Bulkhead.of("test", 1, -1))
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Callable, CountDownLatch, Executors}
+
+import global.namespace.fun.io.api.function.XFunction
+import example.web.framework.spi.HttpExchange
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+class CoalescerSpec extends WordSpec {
+
+  "A coalescer" should {
+    "share a single execution among concurrent identical requests" in {
+      val coalescer = new Coalescer(List("Accept-Language").asJava)
+      val executions = new AtomicInteger
+      val release = new CountDownLatch(1)
+      val execution: XFunction[HttpExchange, BufferedResponse] = exchange => {
+        executions.incrementAndGet()
+        release.await()
+        exchange.responseHeaders.add("Content-Type", "text/plain")
+        new BufferedResponse(200, "Hello".getBytes)
+      }
+      val executor = Executors.newFixedThreadPool(8)
+      try {
+        val futures = List.fill(8)(executor.submit(new Callable[StubHttpExchange] {
+          override def call(): StubHttpExchange = {
+            val exchange = new StubHttpExchange("GET", "/greeting?who=you")
+            exchange.requestHeaders.add("Accept-Language", "de")
+            coalescer.apply(exchange, execution).sendTo(exchange)
+            exchange
+          }
+        }))
+        while (executions.get == 0) Thread.sleep(1)
+        Thread.sleep(100) // let the other requests join the execution in flight
+        coalescer.inFlight shouldBe 1
+        release.countDown()
+        val exchanges = futures.map(_.get)
+        executions.get shouldBe 1
+        coalescer.inFlight shouldBe 0
+        exchanges.map(_.statusCode).toSet shouldBe Set(200)
+        exchanges.map(_.responseHeaders.getFirst("Content-Type")).toSet shouldBe Set("text/plain")
+        exchanges.map(_.responseBody.toString).toSet shouldBe Set("Hello")
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+    "execute requests with different vary headers separately" in {
+      val coalescer = new Coalescer(List("Accept-Language").asJava)
+      val executions = new AtomicInteger
+      val execution: XFunction[HttpExchange, BufferedResponse] = _ => {
+        executions.incrementAndGet()
+        new BufferedResponse(204, Array.emptyByteArray)
+      }
+      for (language <- List("de", "en")) {
+        val exchange = new StubHttpExchange("GET", "/greeting")
+        exchange.requestHeaders.add("Accept-Language", language)
+        coalescer.apply(exchange, execution)
+      }
+      executions.get shouldBe 2
+      coalescer.inFlight shouldBe 0
+    }
+
+    "propagate the exception of an execution to all requests" in {
+      val coalescer = new Coalescer(List.empty[String].asJava)
+      val execution: XFunction[HttpExchange, BufferedResponse] = _ => throw new IllegalStateException("boom")
+      intercept[IllegalStateException](coalescer.apply(new StubHttpExchange("GET", "/"), execution))
+      coalescer.inFlight shouldBe 0
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import example.web.framework.ConcurrencyLimitSpec._
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+class ConcurrencyLimitSpec extends WordSpec {
+
+  "A concurrency limit" should {
+    "adapt to a degrading backend" in {
+      val backend = new Backend
+      val limit = backend.limit
+
+      backend.run(capacity = 50, steps = 200)
+      limit.noLoadRtt.toNanos shouldBe BaseRtt
+      limit.limit should (be > 50 and be < 150)
+      backend.rtt should be <= 3 * BaseRtt
+      val healthy = limit.limit
+
+      backend.run(capacity = 10, steps = 200)
+      limit.limit should (be > 10 and be < 40)
+      backend.rtt should be <= 3 * BaseRtt
+      limit.rejections should be > 0L
+      limit.history.asScala.map(_.limit).min should be < healthy
+
+      backend.run(capacity = 50, steps = 200)
+      limit.limit should be > 50
+    }
+
+    "follow a permanent change of the no-load RTT" in {
+      val backend = new Backend
+      val limit = backend.limit
+      backend.run(capacity = 50, steps = 200)
+
+      backend.run(capacity = 50, steps = 1000, baseRtt = 4 * BaseRtt)
+      limit.noLoadRtt.toNanos shouldBe 4 * BaseRtt
+      limit.limit should (be > 50 and be < 150)
+      backend.rtt should be <= 3 * 4 * BaseRtt
+
+      backend.run(capacity = 50, steps = 1000)
+      limit.noLoadRtt.toNanos shouldBe BaseRtt
+      limit.limit should (be > 50 and be < 150)
+    }
+
+    "not grow while less than half of it is in use" in {
+      val limit = ConcurrencyLimit.of("test")
+      for (_ <- 1 to ConcurrencyLimit.PROBE_INTERVAL / 2 * ConcurrencyLimit.WINDOW_SIZE) {
+        limit.tryAcquire() shouldBe true
+        limit.onSuccess(BaseRtt)
+      }
+      limit.limit shouldBe ConcurrencyLimit.DEFAULT_INITIAL_LIMIT
+      limit.history shouldBe empty
+    }
+
+    "back off when requests get dropped" in {
+      val limit = ConcurrencyLimit.of("test", 10, 5, 100)
+      (1 to 10).foreach(_ => limit.tryAcquire() shouldBe true)
+      limit.tryAcquire() shouldBe false
+      limit.rejections shouldBe 1
+      (1 to 10).foreach(_ => limit.onDropped())
+      limit.limit shouldBe 5
+      limit.inFlight shouldBe 0
+      limit.history.asScala.map(_.limit) shouldBe Seq(9, 8, 7, 6, 5)
+    }
+
+    "reject invalid limits" in {
+      intercept[IllegalArgumentException](ConcurrencyLimit.of("test", 1, 0, 1))
+      intercept[IllegalArgumentException](ConcurrencyLimit.of("test", 1, 2, 1))
+      intercept[IllegalArgumentException](ConcurrencyLimit.of("test", 3, 1, 2))
+      intercept[IllegalArgumentException](ConcurrencyLimit.of("test", 1, 1, 1, 0.5))
+    }
+  }
+}
+
+private object ConcurrencyLimitSpec {
+
+  val BaseRtt: Long = 10 * 1000 * 1000
+
+  val Demand = 200
+
+  /** Simulates a backend which serves `capacity` requests in parallel within the base RTT and queues all others, so
+    * that the RTT grows linearly with the number of requests in flight beyond its capacity.
+    * There is always more demand than the limit, so each step sends as many requests as the limit admits and advances
+    * the virtual clock of the limit by their RTT.
+    */
+  final class Backend {
+
+    private var now = 0L
+
+    val limit: ConcurrencyLimit = ConcurrencyLimit.of("test", ConcurrencyLimit.DEFAULT_INITIAL_LIMIT,
+      ConcurrencyLimit.DEFAULT_MIN_LIMIT, ConcurrencyLimit.DEFAULT_MAX_LIMIT, ConcurrencyLimit.DEFAULT_TOLERANCE,
+      () => now)
+
+    var rtt: Long = 0
+
+    def run(capacity: Int, steps: Int, baseRtt: Long = BaseRtt): Unit = {
+      for (_ <- 1 to steps) {
+        val admitted = (1 to Demand).count(_ => limit.tryAcquire())
+        rtt = baseRtt * math.max(capacity, admitted) / capacity
+        now += rtt
+        for (_ <- 1 to admitted) {
+          limit.onSuccess(rtt)
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.io.ByteArrayOutputStream
+import java.net.http.HttpClient.Version.HTTP_1_1
+import java.net.http.HttpResponse.BodyHandlers
+import java.net.http.{HttpClient, HttpRequest}
+import java.net.{Socket, SocketTimeoutException, URI}
+import java.nio.charset.StandardCharsets.ISO_8859_1
+import java.time.Duration
+import java.util.concurrent.{Callable, Executors}
+
+import example.web.framework.ConnectionPolicySpec._
+import example.web.framework.jdk.JdkHttpEngine
+import example.web.framework.nio.NioHttpEngine
+import example.web.framework.spi.{ConnectionMetrics, ConnectionPolicy, HttpEngine}
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+import scala.math.Ordering.Double.TotalOrdering
+
+class ConnectionPolicySpec extends WordSpec {
+
+  "The NIO engine" should {
+    "reuse keep-alive connections under load" in {
+      withListener(ConnectionPolicy.DEFAULT) { (port, metrics) =>
+        val client = HttpClient.newBuilder.version(HTTP_1_1).build
+        val executor = Executors.newFixedThreadPool(Clients)
+        try {
+          val tasks = (1 to Clients).map(_ => (() => {
+            for (_ <- 1 to RequestsPerClient) {
+              client.send(request(port), BodyHandlers.ofString).statusCode shouldBe 200
+            }
+          }): Callable[Unit])
+          executor.invokeAll(tasks.asJava).asScala.foreach(_.get)
+        } finally {
+          executor.shutdown()
+        }
+        metrics.requests shouldBe Clients * RequestsPerClient
+        metrics.reused shouldBe metrics.requests - metrics.accepted
+        metrics.reused.toDouble / metrics.requests should be >= 0.9
+      }
+    }
+
+    "close connections after the maximum number of requests" in {
+      withListener(ConnectionPolicy.DEFAULT.withMaxRequestsPerConnection(10)) { (port, metrics) =>
+        val client = HttpClient.newBuilder.version(HTTP_1_1).build
+        for (_ <- 1 to 50) {
+          client.send(request(port), BodyHandlers.ofString).statusCode shouldBe 200
+        }
+        metrics.accepted shouldBe 5
+        metrics.reused shouldBe 45
+      }
+    }
+
+    "evict idle connections" in {
+      withListener(ConnectionPolicy.DEFAULT.withIdleTimeout(Duration.ofMillis(100))) { (port, metrics) =>
+        val socket = new Socket("localhost", port)
+        try {
+          socket.setSoTimeout(5000)
+          socket.getOutputStream.write("GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(ISO_8859_1))
+          readAll(socket) should startWith("HTTP/1.1 200 ")
+          metrics.idleEvicted shouldBe 1
+          metrics.timedOut shouldBe 0
+        } finally {
+          socket.close()
+        }
+      }
+    }
+
+    "time out slow requests" in {
+      withListener(ConnectionPolicy.DEFAULT.withReadTimeout(Duration.ofMillis(100))) { (port, metrics) =>
+        val socket = new Socket("localhost", port)
+        try {
+          socket.setSoTimeout(5000)
+          socket.getOutputStream.write("GET /hello HTTP/1.1\r\nHost: loc".getBytes(ISO_8859_1))
+          readAll(socket) should startWith("HTTP/1.1 408 ")
+          metrics.timedOut shouldBe 1
+          metrics.requests shouldBe 0
+        } finally {
+          socket.close()
+        }
+      }
+    }
+
+    "time out clients which do not read the response" in {
+      withListener(ConnectionPolicy.DEFAULT.withWriteTimeout(Duration.ofMillis(100))) { (port, metrics) =>
+        val socket = new Socket
+        try {
+          socket.setReceiveBufferSize(4 * 1024)
+          socket.connect(new java.net.InetSocketAddress("localhost", port))
+          socket.getOutputStream.write("GET /large HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(ISO_8859_1))
+          val deadline = System.nanoTime + 5000L * 1000 * 1000
+          while (metrics.timedOut == 0 && System.nanoTime < deadline) {
+            Thread.sleep(10)
+          }
+          metrics.timedOut shouldBe 1
+          metrics.open shouldBe 0
+        } finally {
+          socket.close()
+        }
+      }
+    }
+
+    "stop accepting connections at the maximum" in {
+      withListener(ConnectionPolicy.DEFAULT.withMaxConnections(1)) { (port, metrics) =>
+        val first = new Socket("localhost", port)
+        val second = new Socket("localhost", port)
+        try {
+          val deadline = System.nanoTime + 5000L * 1000 * 1000
+          while (metrics.open == 0 && System.nanoTime < deadline) {
+            Thread.sleep(10)
+          }
+          second.setSoTimeout(300)
+          second.getOutputStream.write("GET /hello HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+            .getBytes(ISO_8859_1))
+          intercept[SocketTimeoutException](second.getInputStream.read())
+          metrics.accepted shouldBe 1
+
+          first.close()
+          second.setSoTimeout(5000)
+          readAll(second) should startWith("HTTP/1.1 200 ")
+          metrics.accepted shouldBe 2
+        } finally {
+          first.close()
+          second.close()
+        }
+      }
+    }
+  }
+
+  "The JDK engine" should {
+    "not provide connection metrics" in {
+      val listener = routes(new JdkHttpEngine).start(0)
+      try {
+        listener.connectionMetrics shouldBe empty
+      } finally {
+        listener.stop(0)
+      }
+    }
+  }
+}
+
+private object ConnectionPolicySpec {
+
+  val Clients = 8
+
+  val RequestsPerClient = 50
+
+  private lazy val large = new Array[Byte](16 * 1024 * 1024)
+
+  def routes(e: HttpEngine): HttpServer.WithMethod[HttpController] = {
+    new HttpServer {
+      override def engine: HttpEngine = e
+    }
+      .`with`(classOf[HttpController])
+        .route("/hello")
+          .get { c =>
+            c.textPlainUtf8.append("Hello, world!").flush()
+            200
+          }
+        .route("/large")
+          .get { c =>
+            c.responseHeaders.add("Content-Type", "application/octet-stream")
+            c.responseBody.write(large)
+            200
+          }
+  }
+
+  def withListener(policy: ConnectionPolicy)(test: (Int, ConnectionMetrics) => Any): Unit = {
+    val engine = new NioHttpEngine(2, NioHttpEngine.DEFAULT_WORKER_THREADS, NioHttpEngine.DEFAULT_MAX_REQUEST_BODY_SIZE,
+      policy)
+    val listener = routes(engine).start(0)
+    try {
+      test(listener.address.getPort, listener.connectionMetrics.get)
+    } finally {
+      listener.stop(0)
+    }
+  }
+
+  def request(port: Int): HttpRequest = HttpRequest.newBuilder(URI.create(s"http://localhost:$port/hello")).build
+
+  /** Reads the given socket until the server closes the connection. */
+  def readAll(socket: Socket): String = {
+    val out = new ByteArrayOutputStream
+    socket.getInputStream.transferTo(out)
+    out.toString(ISO_8859_1)
+  }
+}
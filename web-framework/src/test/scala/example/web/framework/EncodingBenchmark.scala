@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import scala.beans.BeanProperty
+import scala.jdk.CollectionConverters._
+
+/** Compares the payload size and the encode/decode throughput of JSON and CBOR for greeting DTOs.
+  *
+  * Run it like this:
+  * {{{
+  * $ ./mvnw -pl web-framework test-compile exec:java -Dexec.classpathScope=test \
+  *     -Dexec.mainClass=example.web.framework.EncodingBenchmark -Dexec.args="<seconds>"
+  * }}}
+  *
+  * The argument is the duration of each measurement in seconds.
+  */
+object EncodingBenchmark {
+
+  class Greeting {
+
+    @BeanProperty
+    var message: String = _
+  }
+
+  class Greetings {
+
+    @BeanProperty
+    var greetings: java.util.List[Greeting] = _
+  }
+
+  def main(args: Array[String]): Unit = {
+    val seconds = args.lift(0).map(_.toDouble).getOrElse(2.0)
+    val greetings = new Greetings
+    greetings.greetings = (1 to 100).map(i => greeting(s"Hello, visitor number $i!")).asJava
+    val dtos = Seq(
+      "greeting" -> greeting("Hello, world!"),
+      "100 greetings" -> greetings,
+    )
+    val formats = Seq("json" -> ObjectMappers.DEFAULT, "cbor" -> ObjectMappers.CBOR)
+    for ((name, dto) <- dtos; (format, mapper) <- formats) {
+      val bytes = mapper.writeValueAsBytes(dto)
+      val encode = throughput(seconds)(mapper.writeValueAsBytes(dto))
+      val decode = throughput(seconds)(mapper.readValue(bytes, dto.getClass))
+      println(f"$format%-4s $name%-13s: ${bytes.length}%,7d bytes, $encode%,12.0f encodes/s, $decode%,12.0f decodes/s")
+    }
+  }
+
+  private def greeting(message: String) = {
+    val g = new Greeting
+    g.message = message
+    g
+  }
+
+  /** Returns the number of calls per second after warming up for the given duration. */
+  private def throughput(seconds: Double)(call: => Any): Double = {
+    def measure(): Double = {
+      val nanos = (seconds * 1e9).toLong
+      val start = System.nanoTime
+      var calls = 0L
+      var now = start
+      while (now - start < nanos) {
+        var i = 0
+        while (i < 1000) {
+          call
+          i += 1
+        }
+        calls += 1000
+        now = System.nanoTime
+      }
+      calls / ((now - start) / 1e9)
+    }
+
+    measure()
+    measure()
+  }
+}
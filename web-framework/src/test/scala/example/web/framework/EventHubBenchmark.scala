@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.channels.{SelectionKey, Selector, SocketChannel}
+import java.nio.charset.StandardCharsets.ISO_8859_1
+
+import example.web.framework.nio.NioHttpEngine
+import example.web.framework.spi.HttpEngine
+
+import scala.jdk.CollectionConverters._
+
+/** Measures how fast an event hub fans out events to many subscribers of the NIO engine.
+  *
+  * Run it like this:
+  * {{{
+  * $ ./mvnw -pl web-framework test-compile exec:java -Dexec.classpathScope=test \
+  *     -Dexec.mainClass=example.web.framework.EventHubBenchmark -Dexec.args="<subscribers> <events>"
+  * }}}
+  *
+  * Each subscriber needs two file descriptors, one for the client and one for the server.
+  */
+object EventHubBenchmark {
+
+  def main(args: Array[String]): Unit = {
+    val subscribers = args.lift(0).map(_.toInt).getOrElse(10000)
+    val events = args.lift(1).map(_.toInt).getOrElse(100)
+    val hub = EventHub.of("benchmark", events, EventHub.Overflow.DROP)
+    val listener = new HttpServer {
+      override def engine: HttpEngine = new NioHttpEngine
+    }
+      .`with`(classOf[HttpController])
+        .route("/events")
+          .get(_ => 200)
+            .events(hub)
+      .start(0)
+    val selector = Selector.open
+    try {
+      val request = ByteBuffer.wrap("GET /events HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(ISO_8859_1))
+      for (_ <- 1 to subscribers) {
+        val channel = SocketChannel.open(listener.address)
+        channel.write(request.duplicate)
+        channel.configureBlocking(false)
+        channel.register(selector, SelectionKey.OP_READ, new Subscriber)
+      }
+      while (hub.subscribers < subscribers) {
+        read(selector)
+      }
+      val start = System.nanoTime
+      for (i <- 1 to events) {
+        hub.publish("benchmark", s"This is event number $i.")
+      }
+      // Each subscriber receives an initial heartbeat before the events:
+      while (selector.keys.asScala.exists(_.attachment.asInstanceOf[Subscriber].frames <= events)) {
+        read(selector)
+      }
+      val seconds = (System.nanoTime - start) / 1e9
+      println(f"nio: ${subscribers.toLong * events / seconds}%,.0f events/s " +
+        f"($subscribers subscribers, $events events in $seconds%.3f s, ${hub.dropped} dropped)")
+    } finally {
+      selector.keys.asScala.foreach(_.channel.close())
+      selector.close()
+      hub.close()
+      listener.stop(0)
+    }
+  }
+
+  private val buffer = ByteBuffer.allocateDirect(64 * 1024)
+
+  /** Counts the frames received by a subscriber, which end with an empty line. */
+  private class Subscriber {
+
+    var frames = 0
+    var last: Byte = 0
+  }
+
+  private def read(selector: Selector): Unit = {
+    selector.select(100)
+    val keys = selector.selectedKeys
+    for (key <- keys.asScala) {
+      val subscriber = key.attachment.asInstanceOf[Subscriber]
+      buffer.clear()
+      key.channel.asInstanceOf[SocketChannel].read(buffer)
+      buffer.flip()
+      while (buffer.hasRemaining) {
+        val b = buffer.get
+        if (b == '\n' && subscriber.last == '\n') {
+          subscriber.frames += 1
+        }
+        subscriber.last = b
+      }
+    }
+    keys.clear()
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.io.{BufferedReader, ByteArrayOutputStream, InputStreamReader}
+import java.net.{InetSocketAddress, Socket}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+
+import example.web.framework.EventHub.Overflow
+import example.web.framework.nio.NioHttpEngine
+import example.web.framework.spi.HttpEngine
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+class EventHubSpec extends WordSpec {
+
+  import EventHubSpec._
+
+  "An event hub" should {
+    "serialize each event once and fan it out to all subscribers" in {
+      withHub(Overflow.DROP) { hub =>
+        val exchanges = List.fill(100)(new StubHttpExchange("GET", "/events"))
+        exchanges.foreach(hub.subscribe)
+        hub.subscribers shouldBe 100
+        hub.publish("greeting", "Hello,\nworld!")
+        exchanges.foreach { e =>
+          e.statusCode shouldBe 200
+          e.responseHeaders.getFirst("Content-Type") shouldBe "text/event-stream; charset=UTF-8"
+          eventually(e.body shouldBe ":\n\nevent: greeting\ndata: Hello,\ndata: world!\n\n")
+        }
+      }
+    }
+
+    "drop events for slow subscribers" in {
+      withHub(Overflow.DROP) { hub =>
+        val slow = new SlowExchange
+        hub.subscribe(slow)
+        slow.blocked.await()
+        (1 to 3).foreach(i => hub.publish(i.toString))
+        hub.dropped shouldBe 1
+        slow.gate.countDown()
+        eventually(slow.body shouldBe ":\n\ndata: 1\n\ndata: 2\n\n")
+        hub.subscribers shouldBe 1
+      }
+    }
+
+    "disconnect slow subscribers" in {
+      withHub(Overflow.DISCONNECT) { hub =>
+        val slow = new SlowExchange
+        hub.subscribe(slow)
+        slow.blocked.await()
+        (1 to 3).foreach(i => hub.publish(i.toString))
+        slow.gate.countDown()
+        eventually(slow.closed shouldBe true)
+        hub.subscribers shouldBe 0
+        hub.disconnected shouldBe 1
+      }
+    }
+
+    "treat back pressure from the engine as an overflow" in {
+      withHub(Overflow.DROP) { hub =>
+        val congested = new CongestedExchange
+        hub.subscribe(congested)
+        hub.publish("1")
+        eventually(hub.dropped shouldBe 2)
+        hub.subscribers shouldBe 1
+      }
+      withHub(Overflow.DISCONNECT) { hub =>
+        val congested = new CongestedExchange
+        hub.subscribe(congested)
+        eventually(congested.closed shouldBe true)
+        hub.disconnected shouldBe 1
+      }
+    }
+
+    "not block its writer thread on a slow subscriber of the NIO engine" in {
+      val hub = EventHub.of("nio", 1, 1000, Overflow.DROP, Duration.ofHours(1))
+      val listener = new HttpServer {
+        override def engine: HttpEngine = new NioHttpEngine(1, NioHttpEngine.DEFAULT_MAX_REQUEST_BODY_SIZE)
+      }
+        .`with`(classOf[HttpController])
+          .route("/events")
+            .get(_ => 200)
+              .events(hub)
+        .start(0)
+      try {
+        val port = listener.address.getPort
+        val slow = subscribe(port, receiveBufferSize = 4 * 1024)
+        try {
+          while (hub.subscribers < 1) Thread.sleep(1)
+          val data = "x" * (64 * 1024)
+          (1 to 64).foreach(_ => hub.publish(data))
+          eventually(hub.dropped should be > 0L)
+          val fast = subscribe(port)
+          try {
+            fast.setSoTimeout(5000)
+            while (hub.subscribers < 2) Thread.sleep(1)
+            hub.publish("done", "")
+            val in = new BufferedReader(new InputStreamReader(fast.getInputStream, UTF_8))
+            Iterator.continually(in.readLine).takeWhile(null != _).find(_ == "event: done") shouldBe Some("event: done")
+          } finally {
+            fast.close()
+          }
+        } finally {
+          slow.close()
+        }
+      } finally {
+        listener.stop(0)
+        hub.close()
+      }
+    }
+
+    "send heartbeats to idle subscribers" in {
+      withHub(Overflow.DROP, Duration.ofMillis(50)) { hub =>
+        val exchange = new StubHttpExchange("GET", "/events")
+        hub.subscribe(exchange)
+        eventually(exchange.body should startWith(":\n\n:\n\n:\n\n"))
+      }
+    }
+  }
+}
+
+private object EventHubSpec {
+
+  implicit class WithBody(val exchange: StubHttpExchange) extends AnyVal {
+
+    def body: String = new String(exchange.responseBody.toByteArray, UTF_8)
+  }
+
+  /** An exchange which blocks when writing until the gate gets opened. */
+  class SlowExchange extends StubHttpExchange("GET", "/events") {
+
+    val blocked = new CountDownLatch(1)
+    val gate = new CountDownLatch(1)
+
+    override val responseBody: ByteArrayOutputStream = new ByteArrayOutputStream {
+
+      override def write(b: Array[Byte]): Unit = {
+        blocked.countDown()
+        gate.await()
+        super.write(b)
+      }
+    }
+  }
+
+  /** An exchange whose engine has too much output pending. */
+  class CongestedExchange extends StubHttpExchange("GET", "/events") {
+
+    override def tryWrite(b: Array[Byte]): Boolean = false
+  }
+
+  /** Returns a socket which has subscribed to the event stream of the server at the given port, but reads nothing. */
+  def subscribe(port: Int, receiveBufferSize: Int = 64 * 1024): Socket = {
+    val socket = new Socket
+    socket.setReceiveBufferSize(receiveBufferSize)
+    socket.connect(new InetSocketAddress("localhost", port))
+    socket.getOutputStream.write("GET /events HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(UTF_8))
+    socket
+  }
+
+  def withHub(overflow: Overflow, heartbeatInterval: Duration = Duration.ofHours(1))(test: EventHub => Any): Unit = {
+    val hub = EventHub.of("test", 2, 2, overflow, heartbeatInterval)
+    try {
+      test(hub)
+    } finally {
+      hub.close()
+    }
+  }
+
+  def eventually(assertion: => Any): Unit = {
+    val deadline = System.nanoTime + 5000000000L
+    var done = false
+    while (!done) {
+      try {
+        assertion
+        done = true
+      } catch {
+        case e: Throwable if System.nanoTime < deadline => Thread.sleep(10)
+      }
+    }
+  }
+}
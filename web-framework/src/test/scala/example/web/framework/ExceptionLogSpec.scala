@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.time.Duration
+
+import org.mockito.Mockito._
+import org.scalatest.WordSpec
+import org.slf4j.Logger
+
+class ExceptionLogSpec extends WordSpec {
+
+  "An exception log" should {
+    "log every exception if sampling is disabled" in {
+      val logger = mock(classOf[Logger])
+      val log = new ExceptionLog(logger, Duration.ZERO)
+      val e = new Exception
+      log.error("Oops:", e)
+      log.error("Oops:", e)
+      verify(logger, times(2)).error("Oops:", e)
+    }
+
+    "sample exceptions per type and report the number of suppressed exceptions" in {
+      val logger = mock(classOf[Logger])
+      val log = new ExceptionLog(logger, Duration.ofMillis(200))
+      val e1 = new IllegalStateException
+      val e2 = new IllegalArgumentException
+      log.error("Oops:", e1)
+      log.error("Oops:", e1)
+      log.error("Oops:", e1)
+      log.error("Oops:", e2)
+      verify(logger).error("Oops:", e1)
+      verify(logger).error("Oops:", e2)
+      Thread.sleep(250)
+      log.error("Oops:", e1)
+      verify(logger).error("Oops: ({} similar exceptions suppressed)", 2L: java.lang.Long, e1)
+      verifyNoMoreInteractions(logger)
+    }
+
+    "sample warnings per message format and report the number of suppressed warnings" in {
+      val logger = mock(classOf[Logger])
+      val log = new ExceptionLog(logger, Duration.ofMillis(200))
+      log.warn("Slow {}.", "a")
+      log.warn("Slow {}.", "b")
+      log.warn("Late {}.", "c")
+      verify(logger).warn("Slow {}.", Seq[AnyRef]("a"): _*)
+      verify(logger).warn("Late {}.", Seq[AnyRef]("c"): _*)
+      Thread.sleep(250)
+      log.warn("Slow {}.", "d")
+      verify(logger).warn("Slow {}. ({} similar warnings suppressed)", Seq[AnyRef]("d", 1L: java.lang.Long): _*)
+      verifyNoMoreInteractions(logger)
+    }
+  }
+}
@@ -8,12 +8,13 @@ import java.util.Collections
 import java.util.Locale._
 
 import com.sun.net.httpserver.Headers
-import HeadersFun.acceptLanguages
+import HeadersFun.{acceptLanguages, acceptedMediaType}
 import org.scalatest.Matchers._
 import org.scalatest.WordSpec
 import org.scalatest.prop.TableDrivenPropertyChecks._
 
 import scala.jdk.CollectionConverters._
+import scala.jdk.OptionConverters._
 
 class HeadersFunSpec extends WordSpec {
 
@@ -32,6 +33,30 @@ class HeadersFunSpec extends WordSpec {
     }
   }
 
+  "HeadersFun.acceptedMediaType" should {
+    "select the preferred media type" in {
+      forAll(mediaTypeTests) { (accept, mediaType) =>
+        val h = new Headers
+        accept.foreach(h.add("Accept", _))
+        acceptedMediaType(h, List("application/json", "application/cbor").asJava).toScala shouldBe mediaType
+      }
+    }
+  }
+
+  private lazy val mediaTypeTests = Table(
+    ("accept", "mediaType"),
+    (None, Some("application/json")),
+    (Some(""), Some("application/json")),
+    (Some("*/*"), Some("application/json")),
+    (Some("application/*"), Some("application/json")),
+    (Some("application/cbor"), Some("application/cbor")),
+    (Some("application/json;q=0.5, application/cbor"), Some("application/cbor")),
+    (Some("application/*;q=0.5, application/cbor;q=0.1"), Some("application/json")),
+    (Some("*/*;q=0.1, application/json;q=0"), Some("application/cbor")),
+    (Some("text/html, application/xhtml+xml"), None),
+    (Some("application/*;q=0"), None),
+  )
+
   private lazy val tests = Table(
     ("acceptLanguage", "locales"),
     ("*", List(forLanguageTag("*"))),
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.io.BufferedInputStream
+import java.net.Socket
+import java.nio.charset.StandardCharsets.ISO_8859_1
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+
+import example.web.framework.HttpEngineSpec.{readResponse, start}
+import example.web.framework.jdk.JdkHttpEngine
+import example.web.framework.nio.NioHttpEngine
+import example.web.framework.spi.HttpEngine
+
+import scala.jdk.CollectionConverters._
+
+/** Compares the throughput of the HTTP engines using keep-alive connections with optional pipelining.
+  *
+  * Run it like this:
+  * {{{
+  * $ ./mvnw -pl web-framework test-compile exec:java -Dexec.classpathScope=test \
+  *     -Dexec.mainClass=example.web.framework.HttpEngineBenchmark -Dexec.args="<connections> <depth> <seconds>"
+  * }}}
+  */
+object HttpEngineBenchmark {
+
+  def main(args: Array[String]): Unit = {
+    val connections = args.lift(0).map(_.toInt).getOrElse(16)
+    val depth = args.lift(1).map(_.toInt).getOrElse(1)
+    val seconds = args.lift(2).map(_.toInt).getOrElse(10)
+    for ((name, engine) <- List[(String, () => HttpEngine)](
+      "jdk" -> (() => new JdkHttpEngine),
+      "nio" -> (() => new NioHttpEngine),
+      "nio-inline" -> (() => new NioHttpEngine(Runtime.getRuntime.availableProcessors, 0,
+        NioHttpEngine.DEFAULT_MAX_REQUEST_BODY_SIZE)),
+    )) {
+      val listener = start(engine())
+      try {
+        run(listener.address.getPort, connections, depth, 1) // warm-up
+        val requests = run(listener.address.getPort, connections, depth, seconds)
+        println(f"$name%s: ${requests.toDouble / seconds}%,.0f requests/s " +
+          s"($connections connections, pipelining depth $depth, $seconds s)")
+      } finally {
+        listener.stop(0)
+      }
+    }
+  }
+
+  private def run(port: Int, connections: Int, depth: Int, seconds: Int): Long = {
+    val request = "GET /echo?who=benchmark HTTP/1.1\r\nHost: localhost\r\n\r\n" * depth
+    val bytes = request.getBytes(ISO_8859_1)
+    val deadline = System.nanoTime + TimeUnit.SECONDS.toNanos(seconds)
+    val executor = Executors.newFixedThreadPool(connections)
+    try {
+      val tasks = List.fill(connections)(new Callable[Long] {
+        override def call(): Long = {
+          val socket = new Socket("localhost", port)
+          try {
+            socket.setTcpNoDelay(true)
+            val out = socket.getOutputStream
+            val in = new BufferedInputStream(socket.getInputStream)
+            var count = 0L
+            while (System.nanoTime - deadline < 0) {
+              out.write(bytes)
+              for (_ <- 1 to depth) {
+                readResponse(in)
+              }
+              count += depth
+            }
+            count
+          } finally {
+            socket.close()
+          }
+        }
+      })
+      executor.invokeAll(tasks.asJava).asScala.map(_.get).sum
+    } finally {
+      executor.shutdown()
+    }
+  }
+}
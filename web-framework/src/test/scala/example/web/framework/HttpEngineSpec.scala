@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.io.{BufferedInputStream, ByteArrayInputStream, InputStream}
+import java.net.http.HttpClient.Version.HTTP_1_1
+import java.net.http.HttpRequest.BodyPublishers
+import java.net.http.HttpResponse.BodyHandlers
+import java.net.http.{HttpClient, HttpRequest}
+import java.net.{Socket, URI}
+import java.nio.file.Files
+import java.nio.charset.StandardCharsets.{ISO_8859_1, UTF_8}
+import java.time.Duration
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+import java.util.zip.{GZIPInputStream, GZIPOutputStream}
+
+import example.web.framework.HttpEngineSpec._
+import example.web.framework.jdk.JdkHttpEngine
+import example.web.framework.nio.NioHttpEngine
+import example.web.framework.spi.{HttpEngine, TlsPolicy}
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+import org.scalatest.prop.TableDrivenPropertyChecks._
+
+import scala.jdk.CollectionConverters._
+
+class HttpEngineSpec extends WordSpec {
+
+  "Each HTTP engine" should {
+    "conform to HTTP/1.1" in {
+      forAll(engines) { (_, engine) =>
+        withListener(engine) { listener =>
+          val port = listener.address.getPort
+
+          val get = send(port, "GET", "/echo?who=you")
+          get.statusCode shouldBe 200
+          get.headers.firstValue("Content-Type").get shouldBe "text/plain; charset=UTF-8"
+          get.body shouldBe "Hello, you!"
+
+          val post = send(port, "POST", "/echo", "Grüezi")
+          post.statusCode shouldBe 200
+          post.body shouldBe "Grüezi"
+
+          val large = "x" * (256 * 1024)
+          send(port, "POST", "/echo", large).body shouldBe large
+
+          send(port, "GET", "/nowhere").statusCode shouldBe 404
+
+          val put = send(port, "PUT", "/echo")
+          put.statusCode shouldBe 405
+          put.headers.firstValue("Allow").get.split(", ").toSet shouldBe Set("GET", "POST")
+
+          send(port, "FOO", "/echo").statusCode shouldBe 501
+          send(port, "GET", "/fail").statusCode shouldBe 500
+        }
+      }
+    }
+
+    "serve HTTPS or reject TLS" in {
+      forAll(engines) { (name, engine) =>
+        val policy = TlsPolicy.of(SelfSignedKeyStore.serverContext()).withSessionCacheSize(100)
+        if (name == "jdk") {
+          val listener = routes(engine()).startTls(0, policy)
+          try {
+            val client = HttpClient.newBuilder.version(HTTP_1_1).sslContext(SelfSignedKeyStore.clientContext()).build
+            val request = HttpRequest.newBuilder(URI.create(s"https://localhost:${listener.address.getPort}/echo")).build
+            val response = client.send(request, BodyHandlers.ofString(UTF_8))
+            response.statusCode shouldBe 200
+            response.body shouldBe "Hello, world!"
+            response.sslSession.get.getProtocol shouldBe "TLSv1.3"
+          } finally {
+            listener.stop(0)
+          }
+        } else {
+          intercept[UnsupportedOperationException](routes(engine()).startTls(0, policy))
+        }
+      }
+    }
+
+    "isolate routes in bulkheads" in {
+      forAll(engines) { (_, engine) =>
+        gate = new CountDownLatch(1)
+        withListener(engine) { listener =>
+          val port = listener.address.getPort
+          val blocked = client.sendAsync(request(port, "GET", "/block"), BodyHandlers.ofString(UTF_8))
+          while (bulkhead.activeCalls == 0) Thread.sleep(1)
+          val rejections = bulkhead.rejections
+          send(port, "GET", "/block").statusCode shouldBe 503
+          bulkhead.rejections shouldBe rejections + 1
+          send(port, "GET", "/echo").statusCode shouldBe 200
+          gate.countDown()
+          blocked.get.statusCode shouldBe 204
+        }
+      }
+    }
+
+    "reject requests beyond the concurrency limit" in {
+      forAll(engines) { (_, engine) =>
+        gate = new CountDownLatch(1)
+        withListener(engine) { listener =>
+          val port = listener.address.getPort
+          val blocked = client.sendAsync(request(port, "GET", "/limited"), BodyHandlers.ofString(UTF_8))
+          while (concurrencyLimit.inFlight == 0) Thread.sleep(1)
+          val rejections = concurrencyLimit.rejections
+          send(port, "GET", "/limited").statusCode shouldBe 503
+          concurrencyLimit.rejections shouldBe rejections + 1
+          gate.countDown()
+          blocked.get.statusCode shouldBe 204
+          while (concurrencyLimit.inFlight != 0) Thread.sleep(1)
+          send(port, "GET", "/limited").statusCode shouldBe 204
+        }
+      }
+    }
+
+    "enforce deadlines" in {
+      forAll(engines) { (_, engine) =>
+        withListener(engine) { listener =>
+          val port = listener.address.getPort
+          val timeouts = deadline.timeouts
+          val start = System.nanoTime
+          val slow = send(port, "GET", "/slow")
+          slow.statusCode shouldBe 504
+          slow.headers.firstValue("X-Slow").isPresent shouldBe false
+          (System.nanoTime - start) should be < 5000000000L
+          deadline.timeouts shouldBe timeouts + 1
+          send(port, "GET", "/echo").statusCode shouldBe 200
+          val budget = send(port, "GET", "/budget")
+          budget.statusCode shouldBe 200
+          budget.body.toLong should (be > 0L and be <= 10000L)
+        }
+      }
+    }
+
+    "stream server-sent events" in {
+      forAll(engines) { (_, engine) =>
+        withListener(engine) { listener =>
+          val port = listener.address.getPort
+          send(port, "GET", "/events?deny").statusCode shouldBe 403
+          // The subscriber for the previous engine gets disconnected by the next heartbeat:
+          while (eventHub.subscribers > 0) Thread.sleep(1)
+          val response = client.send(request(port, "GET", "/events"), BodyHandlers.ofLines)
+          response.statusCode shouldBe 200
+          response.headers.firstValue("Content-Type").get shouldBe "text/event-stream; charset=UTF-8"
+          val lines = response.body
+          try {
+            while (eventHub.subscribers == 0) Thread.sleep(1)
+            eventHub.publish("greeting", "Hello, world!")
+            lines.iterator.asScala.dropWhile(_ != "event: greeting").take(3).toList shouldBe
+              List("event: greeting", "data: Hello, world!", "")
+          } finally {
+            lines.close()
+          }
+        }
+      }
+    }
+
+    "limit request bodies" in {
+      forAll(engines) { (_, engine) =>
+        withListener(engine) { listener =>
+          val port = listener.address.getPort
+          send(port, "POST", "/upload", "abc").body shouldBe "3 memory"
+          send(port, "POST", "/upload", "x" * (256 * 1024)).body shouldBe "262144 file"
+
+          def status(path: String, headers: String, body: String = ""): String = {
+            val socket = new Socket("localhost", port)
+            try {
+              val request = s"POST $path HTTP/1.1\r\nHost: localhost\r\n$headers\r\n$body"
+              socket.getOutputStream.write(request.getBytes(ISO_8859_1))
+              new String(socket.getInputStream.readNBytes(12), ISO_8859_1)
+            } finally {
+              socket.close()
+            }
+          }
+
+          status("/upload", s"Content-Length: ${1024 * 1024}\r\n") shouldBe "HTTP/1.1 413"
+          // Exceed the limit by one byte so that the servers have read the request body before rejecting it:
+          val chunked = "%x\r\n%s\r\n1\r\nx\r\n0\r\n\r\n".format(MaxRequestBodySize, "x" * MaxRequestBodySize)
+          status("/upload", "Transfer-Encoding: chunked\r\n", chunked) shouldBe "HTTP/1.1 413"
+          status("/echo", "Transfer-Encoding: chunked\r\n", chunked) shouldBe "HTTP/1.1 413"
+          send(port, "GET", "/echo").statusCode shouldBe 200
+
+          val deadline = System.nanoTime + 5000000000L
+          while (tempDirectory.toFile.list.nonEmpty && System.nanoTime < deadline) Thread.sleep(1)
+          tempDirectory.toFile.list shouldBe empty
+        }
+      }
+    }
+
+    "serve static resources" in {
+      forAll(engines) { (_, engine) =>
+        withListener(engine) { listener =>
+          val port = listener.address.getPort
+
+          def get(path: String, headers: (String, String)*) = {
+            val builder = HttpRequest.newBuilder(URI.create(s"http://localhost:$port$path"))
+            headers.foreach { case (name, value) => builder.header(name, value) }
+            client.send(builder.build, BodyHandlers.ofByteArray)
+          }
+
+          val hello = get("/assets/hello.txt")
+          hello.statusCode shouldBe 200
+          new String(hello.body, UTF_8) shouldBe "Hello, world!"
+          hello.headers.firstValue("Content-Type").get shouldBe "text/plain; charset=UTF-8"
+          hello.headers.firstValue("Vary").get shouldBe "Accept-Encoding"
+          val etag = hello.headers.firstValue("ETag").get
+          val lastModified = hello.headers.firstValue("Last-Modified").get
+
+          val head = client.send(request(port, "HEAD", "/assets/hello.txt"), BodyHandlers.discarding)
+          head.statusCode shouldBe 200
+          head.headers.firstValue("Content-Length").get shouldBe "13"
+
+          get("/assets/hello.txt", "If-None-Match" -> etag).statusCode shouldBe 304
+          get("/assets/hello.txt", "If-Modified-Since" -> lastModified).statusCode shouldBe 304
+
+          val range = get("/assets/hello.txt", "Range" -> "bytes=7-11")
+          range.statusCode shouldBe 206
+          new String(range.body, UTF_8) shouldBe "world"
+          range.headers.firstValue("Content-Range").get shouldBe "bytes 7-11/13"
+          get("/assets/hello.txt", "Range" -> "bytes=7-11", "If-Range" -> "\"stale\"").statusCode shouldBe 200
+          get("/assets/hello.txt", "Range" -> "bytes=13-").statusCode shouldBe 416
+
+          val gzip = get("/assets/hello.txt", "Accept-Encoding" -> "br, gzip")
+          gzip.headers.firstValue("Content-Encoding").get shouldBe "gzip"
+          new String(new GZIPInputStream(new ByteArrayInputStream(gzip.body)).readAllBytes, UTF_8) shouldBe
+            "Hello, world!"
+
+          get("/assets/large.bin").body shouldBe largeContent
+
+          get("/assets/missing.txt").statusCode shouldBe 404
+          get("/assets/%2e%2e/hello.txt").statusCode shouldBe 404
+        }
+      }
+    }
+
+    "negotiate the media type" in {
+      forAll(engines) { (_, engine) =>
+        withListener(engine) { listener =>
+          val port = listener.address.getPort
+
+          def get(accept: String) = {
+            val builder = HttpRequest.newBuilder(URI.create(s"http://localhost:$port/dto"))
+            if (accept.nonEmpty) builder.header("Accept", accept)
+            client.send(builder.build, BodyHandlers.ofByteArray)
+          }
+
+          val json = get("")
+          json.statusCode shouldBe 200
+          json.headers.firstValue("Content-Type").get shouldBe "application/json"
+          json.headers.firstValue("Vary").get shouldBe "Accept"
+          new String(json.body, UTF_8) shouldBe """{"message":"Hello, world!"}"""
+
+          val cbor = get("application/json;q=0.5, application/cbor")
+          cbor.statusCode shouldBe 200
+          cbor.headers.firstValue("Content-Type").get shouldBe "application/cbor"
+          ObjectMappers.CBOR.readTree(cbor.body).get("message").asText shouldBe "Hello, world!"
+
+          val html = get("text/html")
+          html.statusCode shouldBe 406
+          html.headers.firstValue("Vary").get shouldBe "Accept"
+        }
+      }
+    }
+
+    "serve pre-rendered error pages in production mode" in {
+      forAll(engines) { (_, engine) =>
+        val listener = routes(engine(), ErrorMode.PRODUCTION).start(0)
+        try {
+          val port = listener.address.getPort
+
+          val fail = send(port, "GET", "/fail")
+          fail.statusCode shouldBe 500
+          fail.body shouldBe "<h1>500 Internal Server Error</h1>"
+
+          val put = send(port, "PUT", "/echo")
+          put.statusCode shouldBe 405
+          put.headers.firstValue("Allow").get shouldBe "GET, POST"
+
+          send(port, "GET", "/nowhere").statusCode shouldBe 404
+          send(port, "FOO", "/echo").statusCode shouldBe 501
+        } finally {
+          listener.stop(0)
+        }
+      }
+    }
+
+    "support keep-alive and pipelining" in {
+      forAll(engines) { (_, engine) =>
+        withListener(engine) { listener =>
+          val socket = new Socket("localhost", listener.address.getPort)
+          try {
+            val request = "GET /echo?who=%s HTTP/1.1\r\nHost: localhost\r\n\r\n"
+            socket.getOutputStream.write((request.format("one") + request.format("two")).getBytes(ISO_8859_1))
+            socket.getOutputStream.write(request.format("three").getBytes(ISO_8859_1))
+            val in = new BufferedInputStream(socket.getInputStream)
+            readResponse(in) shouldBe "Hello, one!"
+            readResponse(in) shouldBe "Hello, two!"
+            readResponse(in) shouldBe "Hello, three!"
+          } finally {
+            socket.close()
+          }
+        }
+      }
+    }
+  }
+
+  "The NIO engine" should {
+    "not stall the other connections of an event loop while a handler blocks" in {
+      gate = new CountDownLatch(1)
+      entered = new CountDownLatch(1)
+      withListener(() => new NioHttpEngine(1, MaxRequestBodySize)) { listener =>
+        val port = listener.address.getPort
+        val blocked = client.sendAsync(request(port, "GET", "/wait"), BodyHandlers.ofString(UTF_8))
+        entered.await()
+        client
+          .sendAsync(request(port, "GET", "/echo"), BodyHandlers.ofString(UTF_8))
+          .get(5, TimeUnit.SECONDS)
+          .statusCode shouldBe 200
+        gate.countDown()
+        blocked.get.statusCode shouldBe 204
+      }
+    }
+
+    "not interrupt the event loop when a deadline expires" in {
+      withListener(() => new NioHttpEngine(1, 0, MaxRequestBodySize)) { listener =>
+        val port = listener.address.getPort
+        interrupted = true
+        val late = send(port, "GET", "/late")
+        late.statusCode shouldBe 504
+        late.headers.firstValue("X-Late").isPresent shouldBe false
+        interrupted shouldBe false
+        send(port, "GET", "/echo").statusCode shouldBe 200
+      }
+    }
+  }
+}
+
+object HttpEngineSpec {
+
+  private lazy val engines = Table(
+    ("name", "engine"),
+    ("jdk", () => new JdkHttpEngine),
+    // The NIO engine buffers request bodies before dispatching, so it needs to enforce the limit on its own:
+    ("nio", () => new NioHttpEngine(2, MaxRequestBodySize)),
+    // Without worker threads, handlers run on the event loop, so blocking routes need a bulkhead:
+    ("nio-inline", () => new NioHttpEngine(2, 0, MaxRequestBodySize)),
+  )
+
+  private lazy val bulkhead = Bulkhead.of("block", 1, 0)
+
+  private lazy val concurrencyLimit = ConcurrencyLimit.of("limited", 1, 1, 1)
+
+  private lazy val deadline = Deadline.of(Duration.ofMillis(200))
+
+  private lazy val eventHub = EventHub.of("test", 2, 16, EventHub.Overflow.DISCONNECT, Duration.ofMillis(100))
+
+  private val MaxRequestBodySize = 512 * 1024
+
+  private lazy val tempDirectory = Files.createTempDirectory("http-engine-spec")
+
+  private lazy val bodyPolicy = RequestBodyPolicy.DEFAULT
+    .withMemoryThreshold(4 * 1024)
+    .withMaxSize(MaxRequestBodySize)
+    .withTempDirectory(tempDirectory)
+
+  private lazy val largeContent = {
+    val content = new Array[Byte](3 * 1024 * 1024 + 1)
+    new scala.util.Random(0).nextBytes(content)
+    content
+  }
+
+  private lazy val assetsDirectory = {
+    val dir = Files.createTempDirectory("http-engine-spec-assets")
+    Files.write(dir.resolve("hello.txt"), "Hello, world!".getBytes(UTF_8))
+    val gzip = new GZIPOutputStream(Files.newOutputStream(dir.resolve("hello.txt.gz")))
+    try {
+      gzip.write("Hello, world!".getBytes(UTF_8))
+    } finally {
+      gzip.close()
+    }
+    Files.write(dir.resolve("large.bin"), largeContent)
+    dir
+  }
+
+  @volatile private var gate = new CountDownLatch(0)
+
+  @volatile private var entered = new CountDownLatch(0)
+
+  @volatile private var interrupted = false
+
+  private lazy val client = HttpClient.newBuilder.version(HTTP_1_1).build
+
+  trait EchoController extends HttpController {
+
+    def echo(): Int = {
+      textPlainUtf8.append(s"Hello, ${requestParam("who", "world")}!").flush()
+      200
+    }
+
+    def post(): Int = {
+      responseHeaders.add("Content-Type", "text/plain; charset=UTF-8")
+      requestBody.transferTo(responseBody)
+      200
+    }
+
+    def upload(): Int = {
+      val body = bufferedRequestBody
+      textPlainUtf8.append(s"${body.size} ${if (body.inMemory) "memory" else "file"}").flush()
+      200
+    }
+
+    def dto(): Int = {
+      negotiated.encode(java.util.Map.of("message", "Hello, world!"))
+      200
+    }
+
+    def fail(): Int = throw new Exception("This controller always fails.")
+
+    def block(): Int = {
+      entered.countDown()
+      gate.await()
+      204
+    }
+
+    def events(): Int = if (requestParameters.containsKey("deny")) 403 else 200
+
+    def slow(): Int = {
+      responseHeaders.add("X-Slow", "true")
+      Thread.sleep(10000)
+      204
+    }
+
+    def late(): Int = {
+      responseHeaders.add("X-Late", "true")
+      val end = System.nanoTime + 300L * 1000 * 1000
+      while (System.nanoTime < end) {}
+      interrupted = Thread.currentThread.isInterrupted
+      textPlainUtf8.append("Too late!").flush()
+      200
+    }
+
+    def budget(): Int = {
+      textPlainUtf8.append(remainingTime.get.toMillis.toString).flush()
+      200
+    }
+  }
+
+  def routes(e: HttpEngine, mode: ErrorMode = ErrorMode.DEVELOPMENT): HttpServer.WithMethod[EchoController] = {
+    val server = new HttpServer {
+      override def engine: HttpEngine = e
+
+      override def errorMode: ErrorMode = mode
+
+      override def requestBodyPolicy: RequestBodyPolicy = bodyPolicy
+    }
+    server
+      .`with`(classOf[EchoController])
+        .route("/echo")
+          .get(_.echo())
+            .coalesced("Accept-Language")
+          .post(_.post())
+        .routeStatic("/assets", assetsDirectory)
+        .route("/upload")
+          .post(_.upload())
+        .route("/dto")
+          .get(_.dto())
+        .route("/fail")
+          .get(_.fail())
+        .route("/block")
+          .get(_.block())
+            .bulkhead(bulkhead)
+        .route("/wait")
+          .get(_.block())
+        .route("/limited")
+          .get(_.block())
+            .concurrencyLimit(concurrencyLimit)
+            .bulkhead(Bulkhead.of("limited", 2, 0))
+        .route("/events")
+          .get(_.events())
+            .events(eventHub)
+        .route("/slow")
+          .get(_.slow())
+            .deadline(deadline)
+            .bulkhead(Bulkhead.of("slow", 2, 0))
+        .route("/late")
+          .get(_.late())
+            .deadline(Deadline.of(Duration.ofMillis(100)))
+        .route("/budget")
+          .get(_.budget())
+            .deadline(Deadline.of(Duration.ofSeconds(10)))
+  }
+
+  def start(e: HttpEngine, port: Int = 0): HttpEngine.Listener = routes(e).start(port)
+
+  private def withListener(engine: () => HttpEngine)(test: HttpEngine.Listener => Any): Unit = {
+    val listener = start(engine())
+    try {
+      test(listener)
+    } finally {
+      listener.stop(0)
+    }
+  }
+
+  private def request(port: Int, method: String, path: String, body: String = "") = {
+    HttpRequest
+      .newBuilder(URI.create(s"http://localhost:$port$path"))
+      .method(method, if (body.isEmpty) BodyPublishers.noBody else BodyPublishers.ofString(body))
+      .build
+  }
+
+  private def send(port: Int, method: String, path: String, body: String = "") = {
+    client.send(request(port, method, path, body), BodyHandlers.ofString(UTF_8))
+  }
+
+  /** Reads a response with a content length from the given stream and returns its body. */
+  def readResponse(in: InputStream): String = {
+    def readLine(): String = {
+      val line = new StringBuilder
+      var c = in.read()
+      while (c != '\n') {
+        if (c < 0) throw new java.io.EOFException
+        if (c != '\r') line += c.toChar
+        c = in.read()
+      }
+      line.toString
+    }
+
+    readLine() should startWith("HTTP/1.1 200")
+    val headers = Iterator
+      .continually(readLine())
+      .takeWhile(_.nonEmpty)
+      .map { line =>
+        val i = line.indexOf(':')
+        line.substring(0, i).trim.toLowerCase -> line.substring(i + 1).trim
+      }
+      .toMap
+    new String(in.readNBytes(headers("content-length").toInt), UTF_8)
+  }
+}
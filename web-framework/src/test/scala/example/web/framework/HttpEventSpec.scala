@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.io.InputStreamReader
+import java.net.URI
+import java.net.http.HttpClient.Version.HTTP_1_1
+import java.net.http.HttpResponse.BodyHandlers
+import java.net.http.{HttpClient, HttpRequest}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.Files
+import java.time.Duration
+
+import example.web.framework.HttpEngineSpec._
+import example.web.framework.jdk.JdkHttpEngine
+import _root_.jdk.jfr.consumer.RecordingFile
+import _root_.jdk.jfr.{Configuration, Recording}
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+class HttpEventSpec extends WordSpec {
+
+  "The web framework" should {
+    "emit JFR events for dispatch, controller wiring, action execution and response send" in {
+      val recording = new Recording
+      Seq("Dispatch", "Wiring", "Action", "Send").foreach { name =>
+        recording.enable("example.web.framework." + name).withThreshold(Duration.ZERO)
+      }
+      recording.start()
+      val listener = start(new JdkHttpEngine)
+      try {
+        val client = HttpClient.newBuilder.version(HTTP_1_1).build
+        def get(path: String) = {
+          client.send(HttpRequest.newBuilder(URI.create(s"http://localhost:${listener.address.getPort}$path")).build,
+            BodyHandlers.ofString(UTF_8))
+        }
+        get("/echo?who=JFR").body shouldBe "Hello, JFR!"
+        get("/fail").statusCode shouldBe 500
+      } finally {
+        listener.stop(0)
+        recording.stop()
+      }
+      val file = Files.createTempFile("web-framework", ".jfr")
+      try {
+        recording.dump(file)
+        val events = RecordingFile.readAllEvents(file).asScala.toList
+        def find(name: String, route: String) = {
+          events.filter(e => e.getEventType.getName == "example.web.framework." + name && e.getString("route") == route)
+        }
+
+        for (name <- Seq("Dispatch", "Wiring", "Action", "Send")) {
+          val List(e) = find(name, "/echo")
+          e.getString("method") shouldBe "GET"
+          if (name != "Wiring") {
+            e.getInt("status") shouldBe 200
+            e.getLong("bytes") shouldBe "Hello, JFR!".length
+          }
+        }
+
+        val List(dispatch) = find("Dispatch", "/fail")
+        dispatch.getInt("status") shouldBe 500
+        find("Action", "/fail") shouldBe empty
+      } finally {
+        Files.delete(file)
+        recording.close()
+      }
+    }
+
+    "ship a JFR settings file" in {
+      val in = getClass.getResourceAsStream("web-framework.jfc")
+      try {
+        val settings = Configuration.create(new InputStreamReader(in, UTF_8)).getSettings.asScala
+        settings("example.web.framework.Dispatch#enabled") shouldBe "true"
+        settings("example.web.framework.Dispatch#threshold") shouldBe "10 ms"
+        settings("jdk.GCPhasePause#enabled") shouldBe "true"
+        settings("jdk.JavaMonitorEnter#enabled") shouldBe "true"
+      } finally {
+        in.close()
+      }
+    }
+  }
+}
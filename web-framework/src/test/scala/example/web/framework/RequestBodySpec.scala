@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.io.ByteArrayInputStream
+import java.nio.file.{Files, Path}
+
+import example.web.framework.RequestBodySpec._
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+class RequestBodySpec extends WordSpec {
+
+  "A request body" should {
+    "be kept in memory up to the memory threshold" in {
+      withTempDirectory { dir =>
+        val body = read(dir, bytes(1024))
+        try {
+          body.size shouldBe 1024
+          body.inMemory shouldBe true
+          body.fileChannel shouldBe Symbol("empty")
+          bytesOf(body) shouldBe bytes(1024)
+          body.inputStream.readAllBytes shouldBe bytes(1024)
+          list(dir) shouldBe empty
+        } finally {
+          body.close()
+        }
+      }
+    }
+
+    "spill to a temporary file above the memory threshold and delete it on close" in {
+      withTempDirectory { dir =>
+        val body = read(dir, bytes(1025))
+        try {
+          body.size shouldBe 1025
+          body.inMemory shouldBe false
+          body.fileChannel.get.size shouldBe 1025
+          bytesOf(body) shouldBe bytes(1025)
+          bytesOf(body) shouldBe bytes(1025)
+          body.inputStream.readAllBytes shouldBe bytes(1025)
+          body.inputStream.readAllBytes shouldBe bytes(1025)
+        } finally {
+          body.close()
+        }
+        list(dir) shouldBe empty
+      }
+    }
+
+    "expose a read-only byte buffer" in {
+      withTempDirectory { dir =>
+        Seq(16, 2048).foreach { size =>
+          val body = read(dir, bytes(size))
+          try {
+            val buffer = body.byteBuffer
+            buffer.isReadOnly shouldBe true
+            buffer.remaining shouldBe size
+          } finally {
+            body.close()
+          }
+        }
+      }
+    }
+
+    "reject a stream which exceeds the maximum size" in {
+      withTempDirectory { dir =>
+        Seq(2048, 2049).foreach { size =>
+          val result = util.Try(read(dir, bytes(size)))
+          result.foreach(_.close())
+          if (size <= MaxSize) {
+            result.isSuccess shouldBe true
+          } else {
+            result.failed.get shouldBe a[RequestBodyTooLargeException]
+          }
+          list(dir) shouldBe empty
+        }
+      }
+    }
+  }
+}
+
+private object RequestBodySpec {
+
+  val MaxSize = 2048
+
+  def read(dir: Path, content: Array[Byte]): RequestBody = {
+    val policy = RequestBodyPolicy.DEFAULT.withMemoryThreshold(1024).withMaxSize(MaxSize).withTempDirectory(dir)
+    RequestBody.read(new ByteArrayInputStream(content), policy)
+  }
+
+  def bytes(size: Int): Array[Byte] = Array.tabulate(size)(_.toByte)
+
+  def bytesOf(body: RequestBody): Array[Byte] = {
+    val buffer = body.byteBuffer
+    val array = new Array[Byte](buffer.remaining)
+    buffer.get(array)
+    array
+  }
+
+  def list(dir: Path): List[Path] = {
+    val stream = Files.list(dir)
+    try {
+      stream.iterator.asScala.toList
+    } finally {
+      stream.close()
+    }
+  }
+
+  def withTempDirectory(test: Path => Any): Unit = {
+    val dir = Files.createTempDirectory("request-body-spec")
+    try {
+      test(dir)
+    } finally {
+      list(dir).foreach(Files.delete)
+      Files.delete(dir)
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.nio.file.{Files, Path, Paths}
+import java.security.KeyStore
+
+import javax.net.ssl.{KeyManagerFactory, SSLContext, TrustManagerFactory}
+
+/** Generates a self-signed key store for `localhost` using the `keytool` of the running JDK. */
+object SelfSignedKeyStore {
+
+  private val password = "changeit"
+
+  private lazy val file: Path = {
+    val dir = Files.createTempDirectory("keystore")
+    val file = dir.resolve("localhost.p12")
+    val keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString
+    val process = new ProcessBuilder(
+      keytool, "-genkeypair", "-keyalg", "EC", "-groupname", "secp256r1", "-alias", "localhost",
+      "-dname", "CN=localhost", "-ext", "san=dns:localhost,ip:127.0.0.1", "-validity", "1",
+      "-storetype", "PKCS12", "-keystore", file.toString, "-storepass", password, "-keypass", password
+    ).inheritIO.start
+    require(process.waitFor == 0, "keytool failed")
+    file.toFile.deleteOnExit()
+    dir.toFile.deleteOnExit()
+    file
+  }
+
+  lazy val keyStore: KeyStore = {
+    val ks = KeyStore.getInstance("PKCS12")
+    val in = Files.newInputStream(file)
+    try {
+      ks.load(in, password.toCharArray)
+    } finally {
+      in.close()
+    }
+    ks
+  }
+
+  /** Returns a new SSL context for a server which authenticates with the self-signed certificate. */
+  def serverContext(): SSLContext = {
+    val kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm)
+    kmf.init(keyStore, password.toCharArray)
+    val context = SSLContext.getInstance("TLS")
+    context.init(kmf.getKeyManagers, null, null)
+    context
+  }
+
+  /** Returns a new SSL context for a client which trusts the self-signed certificate. */
+  def clientContext(): SSLContext = {
+    val tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm)
+    tmf.init(keyStore)
+    val context = SSLContext.getInstance("TLS")
+    context.init(null, tmf.getTrustManagers, null)
+    context
+  }
+}
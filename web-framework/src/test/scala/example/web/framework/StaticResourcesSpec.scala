@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.{Files, Path}
+import java.time.Duration
+
+import example.web.framework.StaticResourcesSpec._
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+import org.scalatest.prop.TableDrivenPropertyChecks._
+
+class StaticResourcesSpec extends WordSpec {
+
+  "Static resources" should {
+    "parse single byte ranges" in {
+      forAll(Table(
+        ("range", "result"),
+        ("bytes=0-0", Some(Seq(0L, 0L))),
+        ("bytes=2-5", Some(Seq(2L, 5L))),
+        ("bytes=2-", Some(Seq(2L, 9L))),
+        ("bytes=5-100", Some(Seq(5L, 9L))),
+        ("bytes=-3", Some(Seq(7L, 9L))),
+        ("bytes=-100", Some(Seq(0L, 9L))),
+        ("bytes=10-", Some(Seq.empty)),
+        ("bytes=-0", Some(Seq.empty)),
+        ("bytes=5-2", None),
+        ("bytes=0-1,3-4", None),
+        ("bytes=x-", None),
+        ("items=0-1", None),
+      )) { (range, result) =>
+        Option(StaticResources.range(range, 10)).map(_.toSeq) shouldBe result
+      }
+    }
+
+    "not serve paths outside of the directory" in {
+      withDirectory { dir =>
+        Files.write(dir.resolve("hello.txt"), "Hello".getBytes(UTF_8))
+        val resources = new StaticResources(dir)
+        Seq("/", "/../hello.txt", "/./hello.txt", "//hello.txt", "/missing.txt").foreach { uri =>
+          resources.serve(new StubHttpExchange("GET", uri)) shouldBe null
+        }
+        resources.serve(new StubHttpExchange("GET", "/hello.txt")).response.statusCode shouldBe 200
+      }
+    }
+
+    "return the number of transferred bytes" in {
+      withDirectory { dir =>
+        Files.write(dir.resolve("hello.txt"), "Hello".getBytes(UTF_8))
+        val resources = new StaticResources(dir)
+        val etag = get(resources).responseHeaders.getFirst("ETag")
+
+        def serve(method: String, name: String, value: String): (Int, Long) = {
+          val exchange = new StubHttpExchange(method, "/hello.txt")
+          if (null != name) {
+            exchange.requestHeaders.add(name, value)
+          }
+          val served = resources.serve(exchange)
+          served.response.statusCode -> served.length
+        }
+
+        serve("GET", null, null) shouldBe 200 -> 5
+        serve("GET", "Range", "bytes=1-2") shouldBe 206 -> 2
+        serve("GET", "Range", "bytes=5-") shouldBe 416 -> 0
+        serve("GET", "If-None-Match", etag) shouldBe 304 -> 0
+        serve("HEAD", null, null) shouldBe 200 -> 0
+      }
+    }
+
+    "revalidate cached metadata" in {
+      withDirectory { dir =>
+        val file = dir.resolve("hello.txt")
+        Files.write(file, "Hello".getBytes(UTF_8))
+        val resources = new StaticResources(dir, Duration.ZERO)
+
+        val first = get(resources)
+        new String(first.responseBody.toByteArray, UTF_8) shouldBe "Hello"
+        resources.cached shouldBe 1
+
+        Files.write(file, "Hello, world!".getBytes(UTF_8))
+        val second = get(resources)
+        new String(second.responseBody.toByteArray, UTF_8) shouldBe "Hello, world!"
+        second.responseHeaders.getFirst("ETag") should not be first.responseHeaders.getFirst("ETag")
+
+        Files.delete(file)
+        resources.serve(new StubHttpExchange("GET", "/hello.txt")) shouldBe null
+        resources.cached shouldBe 0
+      }
+    }
+  }
+}
+
+private object StaticResourcesSpec {
+
+  def get(resources: StaticResources): StubHttpExchange = {
+    val exchange = new StubHttpExchange("GET", "/hello.txt")
+    resources.serve(exchange).response.statusCode shouldBe 200
+    exchange
+  }
+
+  def withDirectory(test: Path => Any): Unit = {
+    val dir = Files.createTempDirectory("static-resources-spec")
+    try {
+      test(dir)
+    } finally {
+      Files.list(dir).forEach(Files.delete(_))
+      Files.delete(dir)
+    }
+  }
+}
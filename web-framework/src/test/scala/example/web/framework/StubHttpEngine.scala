@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.net.InetSocketAddress
+import java.util.Collections.emptyMap
+import java.util.{Map => JMap}
+
+import example.web.framework.spi.{HttpEngine, HttpExchangeHandler}
+
+/** An engine which doesn't open any socket, but just keeps the exchange handlers of the listener it has started most
+  * recently.
+  * This is useful for driving the routes against a [[StubHttpExchange]] without starting a server.
+  * It's shared with the tests of other modules through the test JAR of this module.
+  */
+class StubHttpEngine extends HttpEngine {
+
+  @volatile var handlers: JMap[String, HttpExchangeHandler] = emptyMap[String, HttpExchangeHandler]
+
+  override def start(address: InetSocketAddress, handlers: JMap[String, HttpExchangeHandler]): HttpEngine.Listener = {
+    this.handlers = handlers
+    val bound = address
+    new HttpEngine.Listener {
+
+      override def address: InetSocketAddress = bound
+
+      override def stop(delay: Int): Unit = ()
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, InputStream}
+import java.net.{InetSocketAddress, URI}
+import java.security.Principal
+import java.util.Optional
+
+import com.sun.net.httpserver.Headers
+import example.web.framework.spi.HttpExchange
+
+/** An in-memory exchange for testing handlers without a server.
+  * It's shared with the tests of other modules through the test JAR of this module.
+  */
+class StubHttpExchange(method: String, uri: String, body: Array[Byte] = Array.emptyByteArray) extends HttpExchange {
+
+  val requestHeaders = new Headers
+  val responseHeaders = new Headers
+  val attributes = new java.util.HashMap[String, AnyRef]
+  val responseBody = new ByteArrayOutputStream
+
+  @volatile var statusCode: Int = -1
+  @volatile var closed = false
+
+  override def contextPath: String = "/"
+
+  override def localAddress: InetSocketAddress = StubHttpExchange.localAddress
+
+  override def remoteAddress: InetSocketAddress = StubHttpExchange.remoteAddress
+
+  override def principal: Optional[Principal] = Optional.empty
+
+  override def protocol: String = "HTTP/1.1"
+
+  override def requestMethod: String = method
+
+  override def requestURI: URI = URI.create(uri)
+
+  override def requestBody: InputStream = new ByteArrayInputStream(body)
+
+  override def sendResponseHeaders(statusCode: Int, responseLength: Long): Unit = {
+    require(this.statusCode == -1, "Response headers already sent.")
+    this.statusCode = statusCode
+  }
+
+  override def responseHeadersSent: Boolean = statusCode != -1
+
+  override def close(): Unit = closed = true
+}
+
+private object StubHttpExchange {
+
+  val localAddress = new InetSocketAddress("localhost", 8080)
+
+  val remoteAddress = new InetSocketAddress("localhost", 49152)
+}
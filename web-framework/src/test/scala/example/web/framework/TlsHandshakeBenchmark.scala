@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.nio.charset.StandardCharsets.ISO_8859_1
+import java.util.concurrent.TimeUnit
+
+import example.web.framework.HttpEngineSpec.routes
+import example.web.framework.jdk.JdkHttpEngine
+import example.web.framework.spi.TlsPolicy
+import javax.net.ssl.{SSLContext, SSLSocket}
+
+/** Measures full and resumed TLS handshakes per second using a self-signed key store.
+  * Each connection does one request/response round trip, so that the client processes the session ticket which a
+  * TLS 1.3 server sends after the handshake.
+  * Otherwise, there would be no session to resume.
+  * A handshake counts as resumed if its session has been created before the connection.
+  *
+  * Run it like this:
+  * {{{
+  * $ ./mvnw -pl web-framework test-compile exec:java -Dexec.classpathScope=test \
+  *     -Dexec.mainClass=example.web.framework.TlsHandshakeBenchmark -Dexec.args="<seconds>"
+  * }}}
+  */
+object TlsHandshakeBenchmark {
+
+  def main(args: Array[String]): Unit = {
+    val seconds = args.lift(0).map(_.toInt).getOrElse(10)
+    val listener = routes(new JdkHttpEngine).startTls(0, TlsPolicy.of(SelfSignedKeyStore.serverContext()))
+    try {
+      val port = listener.address.getPort
+      for ((name, resume) <- List("full" -> false, "resumed" -> true)) {
+        val client = SelfSignedKeyStore.clientContext()
+        run(client, port, resume, 1) // warm-up
+        val (handshakes, resumed) = run(client, port, resume, seconds)
+        require(resumed == (if (resume) handshakes else 0),
+          s"$resumed of $handshakes handshakes have been resumed in $name mode.")
+        println(f"$name%s: ${handshakes.toDouble / seconds}%,.0f handshakes/s ($seconds s)")
+      }
+    } finally {
+      listener.stop(0)
+    }
+  }
+
+  /** Returns the number of handshakes and the number of resumed handshakes. */
+  private def run(client: SSLContext, port: Int, resume: Boolean, seconds: Int): (Long, Long) = {
+    val factory = client.getSocketFactory
+    val deadline = System.nanoTime + TimeUnit.SECONDS.toNanos(seconds)
+    var count = 0L
+    var resumed = 0L
+    while (System.nanoTime - deadline < 0) {
+      val connected = System.currentTimeMillis
+      val socket = factory.createSocket("localhost", port).asInstanceOf[SSLSocket]
+      try {
+        // Otherwise, Nagle's algorithm would delay the request until the server acknowledges the handshake:
+        socket.setTcpNoDelay(true)
+        socket.startHandshake()
+        socket.getOutputStream.write(Request)
+        // The session ticket precedes the response:
+        socket.getInputStream.read()
+        val session = socket.getSession
+        if (session.getCreationTime < connected) {
+          resumed += 1
+        }
+        if (!resume) {
+          session.invalidate()
+        }
+      } finally {
+        socket.close()
+      }
+      count += 1
+    }
+    (count, resumed)
+  }
+
+  private val Request = "GET /echo HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(ISO_8859_1)
+}
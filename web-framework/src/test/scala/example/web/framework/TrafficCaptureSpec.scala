@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework
+
+import java.net.URI
+import java.net.http.HttpClient.Version.HTTP_1_1
+import java.net.http.HttpRequest.BodyPublishers
+import java.net.http.HttpResponse.BodyHandlers
+import java.net.http.{HttpClient, HttpRequest}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.StandardOpenOption.APPEND
+import java.nio.file.{Files, Path}
+import java.util.Optional
+
+import example.web.framework.TrafficCaptureSpec._
+import example.web.framework.spi.HttpEngine
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.collection.mutable
+import scala.jdk.CollectionConverters._
+
+class TrafficCaptureSpec extends WordSpec {
+
+  "Traffic capture" should {
+    "append sampled and redacted exchanges to the file" in {
+      withFile { file =>
+        val capture = TrafficCapture
+          .to(file)
+          .withRedaction { e =>
+            if (e.uri.startsWith("/skip")) Optional.empty[CapturedExchange]
+            else Optional.of(e.withUri(e.uri.replaceAll("secret=[^&]*", "secret=***")))
+          }
+        for (_ <- 1 to 2) {
+          withListener(server("Hello", Some(capture)))(sendAll)
+        }
+
+        val exchanges = read(file)
+        exchanges should have size 2 * Requests.size - 2
+        val Seq(alice, bob, post, missing) = exchanges.take(4)
+        alice.method shouldBe "GET"
+        alice.uri shouldBe "/echo?who=alice"
+        alice.statusCode shouldBe 200
+        alice.responseLength shouldBe "Hello, alice!".length
+        alice.headers.asScala shouldBe Map("Accept" -> List("text/plain").asJava)
+        bob.uri shouldBe "/echo?who=bob&secret=***"
+        post.method shouldBe "POST"
+        new String(post.body, UTF_8) shouldBe "Hello, world!"
+        post.responseLength shouldBe "Hello, world!".length
+        missing.statusCode shouldBe 404
+        exchanges.map(_.timestamp).sliding(2).foreach { case Seq(a, b) => b should be > a }
+        exchanges.foreach(_.duration should be > 0L)
+      }
+    }
+
+    "truncate an incomplete record before appending a segment" in {
+      withFile { file =>
+        withListener(server("Hello", Some(TrafficCapture.to(file))))(sendAll)
+        val complete = read(file)
+        // Simulate a server which has been killed while writing a record of 100 bytes:
+        Files.write(file, Array[Byte]('E', 0, 0, 0, 100) ++ Array.fill[Byte](10)('S'), APPEND)
+        withListener(server("Hello", Some(TrafficCapture.to(file))))(sendAll)
+        read(file).map(_.uri) shouldBe (complete ++ complete).map(_.uri)
+      }
+    }
+
+    "drop exchanges which do not fit into a record" in {
+      withFile { file =>
+        val capture = TrafficCapture
+          .to(file)
+          .withRedaction { e =>
+            Optional.of(if (e.uri.startsWith("/missing")) e.withUri("\u20ac" * 30000) else e)
+          }
+        withListener(server("Hello", Some(capture)))(sendAll)
+        read(file).map(_.uri) shouldBe Requests.map(_._2).filterNot(_ == "/missing")
+      }
+    }
+
+    "replay captured exchanges and report different responses" in {
+      withFile { file =>
+        withListener(server("Hello", Some(TrafficCapture.to(file))))(sendAll)
+        val captured = read(file).size
+
+        withListener(server("Hello", None)) { listener =>
+          val report = TrafficReplay.replay(file, base(listener), Double.PositiveInfinity, 4)
+          report.requests shouldBe captured
+          report.errors shouldBe 0
+          report.diffs shouldBe 0
+          report.latency(50).compareTo(report.latency(100)) should be <= 0
+        }
+
+        withListener(server("Hi", None)) { listener =>
+          val report = TrafficReplay.replay(file, base(listener), 100, 1)
+          report.requests shouldBe captured
+          report.diffs shouldBe 2
+          report.samples.asScala.head should startWith("GET /echo?who=alice: expected status 200 with 13 bytes")
+        }
+      }
+    }
+  }
+}
+
+private object TrafficCaptureSpec {
+
+  val Requests: Seq[(String, String, String)] = Seq(
+    ("GET", "/echo?who=alice", ""),
+    ("GET", "/echo?who=bob&secret=xyz", ""),
+    ("POST", "/echo", "Hello, world!"),
+    ("GET", "/missing", ""),
+    ("GET", "/skip", ""),
+  )
+
+  private lazy val client = HttpClient.newBuilder.version(HTTP_1_1).build
+
+  trait GreetingController extends HttpController {
+
+    def get(greeting: String): Int = {
+      textPlainUtf8.append(s"$greeting, ${requestParam("who", "world")}!").flush()
+      200
+    }
+
+    def post(): Int = {
+      responseHeaders.add("Content-Type", "text/plain; charset=UTF-8")
+      requestBody.transferTo(responseBody)
+      200
+    }
+  }
+
+  def server(greeting: String, capture: Option[TrafficCapture]): HttpServer.WithMethod[GreetingController] = {
+    new HttpServer {
+      override def errorMode: ErrorMode = ErrorMode.PRODUCTION
+
+      override def trafficCapture: Optional[TrafficCapture] = Optional.ofNullable(capture.orNull)
+    }
+      .`with`(classOf[GreetingController])
+        .route("/echo")
+          .get(_.get(greeting))
+          .post(_.post())
+        .route("/skip")
+          .get(_ => 204)
+  }
+
+  def sendAll(listener: HttpEngine.Listener): Unit = {
+    Requests.foreach { case (method, path, body) =>
+      client.send(HttpRequest
+        .newBuilder(base(listener).resolve(path))
+        .method(method, if (body.isEmpty) BodyPublishers.noBody else BodyPublishers.ofString(body))
+        .header("Accept", "text/plain")
+        .header("Authorization", "Bearer secret")
+        .build, BodyHandlers.discarding)
+    }
+  }
+
+  def base(listener: HttpEngine.Listener): URI = URI.create(s"http://localhost:${listener.address.getPort}")
+
+  def withListener(routes: HttpServer.WithMethod[_])(test: HttpEngine.Listener => Any): Unit = {
+    val listener = routes.start(0)
+    try {
+      test(listener)
+    } finally {
+      listener.stop(1)
+    }
+  }
+
+  def read(file: Path): Seq[CapturedExchange] = {
+    val exchanges = mutable.Buffer.empty[CapturedExchange]
+    CaptureFile.forEach(file, exchanges += _)
+    exchanges.toSeq
+  }
+
+  def withFile(test: Path => Any): Unit = {
+    val file = Files.createTempFile("traffic-capture-spec", ".bin")
+    try {
+      Files.delete(file)
+      test(file)
+    } finally {
+      Files.deleteIfExists(file)
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.json
+
+import java.io.{ByteArrayOutputStream, File}
+import java.net.URLClassLoader
+import java.nio.file.Files
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import javax.tools.{DiagnosticCollector, JavaFileObject, ToolProvider}
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+class JsonWriterProcessorSpec extends WordSpec {
+
+  import JsonWriterProcessorSpec._
+
+  "The JSON writer processor" should {
+    "generate writers which produce the same bytes as Jackson" in {
+      val loader = compile(
+        "dto/Base.java" ->
+          """package dto;
+            |public class Base {
+            |    public long id;
+            |    public static String ignored = "static";
+            |    public transient String alsoIgnored = "transient";
+            |    protected String notPublic = "protected";
+            |}
+            |""".stripMargin,
+        "dto/Color.java" ->
+          """package dto;
+            |public enum Color { RED, GREEN }
+            |""".stripMargin,
+        "dto/Sample.java" ->
+          """package dto;
+            |@example.web.framework.json.JsonWritable
+            |public class Sample extends Base {
+            |    public String text;
+            |    public boolean flag;
+            |    public byte b;
+            |    public short s;
+            |    public int i;
+            |    public float f;
+            |    public double d;
+            |    public Boolean boxedFlag;
+            |    public Integer boxedInt;
+            |    public Long boxedLong;
+            |    public Double boxedDouble;
+            |    public Color color;
+            |
+            |    @example.web.framework.json.JsonWritable
+            |    public static class Nested {
+            |        public String message;
+            |    }
+            |}
+            |""".stripMargin
+      )
+      val sample = loader.loadClass("dto.Sample")
+      val nested = loader.loadClass("dto.Sample$Nested")
+      val color = loader.loadClass("dto.Color").getEnumConstants.asInstanceOf[Array[AnyRef]]
+
+      def newSample(values: (String, Any)*): AnyRef = {
+        val s = sample.getDeclaredConstructor().newInstance().asInstanceOf[AnyRef]
+        values.foreach { case (name, value) => sample.getField(name).set(s, value) }
+        s
+      }
+
+      val samples = Seq(
+        newSample(),
+        newSample(
+          "id" -> Long.MinValue,
+          "text" -> "Quote \" backslash \\ slash / controls \b\t\n\f\r\u0000\u001f\u007f umlauts äöü euro € emoji 😀",
+          "flag" -> true,
+          "b" -> Byte.MinValue,
+          "s" -> Short.MaxValue,
+          "i" -> -42,
+          "f" -> 1.1f,
+          "d" -> 1e-7,
+          "boxedFlag" -> false,
+          "boxedInt" -> Int.MaxValue,
+          "boxedLong" -> Long.MaxValue,
+          "boxedDouble" -> Double.NaN,
+          "color" -> color(1)
+        ),
+        newSample("f" -> Float.NegativeInfinity, "d" -> 123456789.0, "text" -> ("x" * 1000))
+      )
+      samples.foreach { s => write(s) shouldBe mapper.writeValueAsBytes(s) }
+
+      val n = nested.getDeclaredConstructor().newInstance().asInstanceOf[AnyRef]
+      nested.getField("message").set(n, "Hello, world!")
+      new String(write(n), "UTF-8") shouldBe """{"message":"Hello, world!"}"""
+      write(n) shouldBe mapper.writeValueAsBytes(n)
+    }
+
+    "reject classes which Jackson would serialize differently" in {
+      val diagnostics = compileWithErrors(
+        "dto/Getter.java" ->
+          """package dto;
+            |@example.web.framework.json.JsonWritable
+            |public class Getter {
+            |    public String message;
+            |    public String getGreeting() { return "Hello, " + message; }
+            |}
+            |""".stripMargin,
+        "dto/Empty.java" ->
+          """package dto;
+            |@example.web.framework.json.JsonWritable
+            |public class Empty {
+            |}
+            |""".stripMargin,
+        "dto/Unsupported.java" ->
+          """package dto;
+            |@example.web.framework.json.JsonWritable
+            |public class Unsupported {
+            |    public java.util.List<String> messages;
+            |}
+            |""".stripMargin
+      )
+      diagnostics should have size 3
+    }
+  }
+}
+
+private object JsonWriterProcessorSpec {
+
+  val mapper = new ObjectMapper
+
+  def write(value: AnyRef): Array[Byte] = {
+    val out = new ByteArrayOutputStream
+    JsonWriters.write(value, out) shouldBe true
+    out.toByteArray
+  }
+
+  def compile(sources: (String, String)*): ClassLoader = {
+    val (dir, diagnostics) = javac(sources)
+    diagnostics shouldBe empty
+    new URLClassLoader(Array(dir.toURI.toURL), getClass.getClassLoader)
+  }
+
+  def compileWithErrors(sources: (String, String)*): Seq[String] = javac(sources)._2
+
+  private def javac(sources: Seq[(String, String)]): (File, Seq[String]) = {
+    val dir = Files.createTempDirectory("json").toFile
+    val files = sources.map { case (name, content) =>
+      val file = new File(dir, name)
+      file.getParentFile.mkdirs()
+      Files.writeString(file.toPath, content)
+      file
+    }
+    val compiler = ToolProvider.getSystemJavaCompiler
+    val diagnostics = new DiagnosticCollector[JavaFileObject]
+    val fileManager = compiler.getStandardFileManager(diagnostics, null, null)
+    val task = compiler.getTask(null, fileManager, diagnostics,
+      List("-d", dir.getPath, "-classpath", System.getProperty("java.class.path")).asJava, null,
+      fileManager.getJavaFileObjectsFromFiles(files.asJava))
+    task.setProcessors(List(new JsonWriterProcessor).asJava)
+    task.call()
+    fileManager.close()
+    dir -> diagnostics.getDiagnostics.asScala.toSeq.filter(_.getKind == javax.tools.Diagnostic.Kind.ERROR).map(_.getMessage(null))
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.nio
+
+import java.io.{ByteArrayOutputStream, IOException}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.net.{InetSocketAddress, Socket}
+import java.nio.channels.{ServerSocketChannel, SocketChannel}
+import java.nio.charset.StandardCharsets.ISO_8859_1
+import java.util.concurrent.atomic.AtomicInteger
+
+import example.web.framework.nio.NioHttpEngineSpec._
+import example.web.framework.nio.RequestDecoderSpec.{assumeSpilledFilesCanBeCounted, spilledFiles}
+import example.web.framework.spi.{HttpEngine, HttpExchange, HttpExchangeHandler}
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+class NioHttpEngineSpec extends WordSpec {
+
+  "A NIO HTTP engine" should {
+    "keep accepting connections after accepting a connection has failed" in {
+      val failures = new AtomicInteger(3)
+      val engine = new NioHttpEngine(1, NioHttpEngine.DEFAULT_MAX_REQUEST_BODY_SIZE) {
+
+        override private[nio] def accept(channel: ServerSocketChannel): SocketChannel = {
+          if (failures.getAndDecrement > 0) {
+            throw new IOException("Too many open files")
+          }
+          super.accept(channel)
+        }
+      }
+      withListener(engine, Map("/" -> noContent)) { listener =>
+        val metrics = listener.connectionMetrics.get
+        for (_ <- 1 to 2) {
+          val socket = new Socket("localhost", listener.address.getPort)
+          try {
+            socket.setSoTimeout(5000)
+            socket.getOutputStream.write("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+              .getBytes(ISO_8859_1))
+            readAll(socket) should startWith("HTTP/1.1 204 ")
+          } finally {
+            socket.close()
+          }
+        }
+        failures.get should be < 0
+        metrics.accepted shouldBe 2
+        awaitNoOpenConnections(listener)
+      }
+    }
+
+    "stop reading and close the connection after rejecting a request" in {
+      val handled = new AtomicInteger
+      val count = { exchange: HttpExchange =>
+        handled.incrementAndGet()
+        noContent.handle(exchange)
+      }: HttpExchangeHandler
+      withListener(new NioHttpEngine(1, 4), Map("/" -> count)) { listener =>
+        val socket = new Socket("localhost", listener.address.getPort)
+        try {
+          socket.setSoTimeout(5000)
+          socket.getOutputStream.write(("POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\n" +
+            "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(ISO_8859_1))
+          val response = readAll(socket)
+          response should startWith("HTTP/1.1 413 ")
+          response.split("HTTP/1.1 ").length shouldBe 2
+        } finally {
+          socket.close()
+        }
+        awaitNoOpenConnections(listener)
+        handled.get shouldBe 0
+      }
+    }
+
+    "stream request bodies which exceed the memory threshold from a temporary file" in {
+      val size = 3 * NioHttpEngine.REQUEST_BODY_MEMORY_THRESHOLD + 1
+      val content = Array.tabulate(size)(i => ('a' + i % 26).toByte)
+      val digest = { exchange: HttpExchange =>
+        val spilled = spilledFiles
+        val in = exchange.requestBody
+        val out = new ByteArrayOutputStream
+        in.transferTo(out)
+        val body = s"$spilled ${out.size} ${java.util.Arrays.equals(out.toByteArray, content)}".getBytes(UTF_8)
+        exchange.sendResponseHeaders(200, body.length)
+        exchange.responseBody.write(body)
+        exchange.close()
+      }: HttpExchangeHandler
+      assumeSpilledFilesCanBeCounted()
+      val before = spilledFiles
+      withListener(new NioHttpEngine(1, NioHttpEngine.DEFAULT_MAX_REQUEST_BODY_SIZE), Map("/" -> digest)) { listener =>
+        val chunked = content.grouped(10000).map(chunk => "%x\r\n".format(chunk.length).getBytes(ISO_8859_1) ++
+          chunk ++ "\r\n".getBytes(ISO_8859_1)).reduce(_ ++ _) ++ "0\r\n\r\n".getBytes(ISO_8859_1)
+        for ((framing, body) <- List(s"Content-Length: $size" -> content, "Transfer-Encoding: chunked" -> chunked)) {
+          val socket = new Socket("localhost", listener.address.getPort)
+          try {
+            socket.setSoTimeout(5000)
+            val out = socket.getOutputStream
+            out.write(s"POST / HTTP/1.1\r\nHost: localhost\r\n$framing\r\nConnection: close\r\n\r\n"
+              .getBytes(ISO_8859_1))
+            out.write(body)
+            val response = readAll(socket)
+            response should startWith("HTTP/1.1 200 ")
+            response should endWith(s"\r\n\r\n${before + 1} $size true")
+          } finally {
+            socket.close()
+          }
+        }
+      }
+      spilledFiles shouldBe before
+    }
+  }
+}
+
+private object NioHttpEngineSpec {
+
+  val noContent: HttpExchangeHandler = { exchange: HttpExchange =>
+    exchange.sendResponseHeaders(204, -1)
+    exchange.close()
+  }
+
+  def withListener(engine: HttpEngine, handlers: Map[String, HttpExchangeHandler])
+                  (test: HttpEngine.Listener => Any): Unit = {
+    val listener = engine.start(new InetSocketAddress(0), handlers.asJava)
+    try {
+      test(listener)
+    } finally {
+      listener.stop(0)
+    }
+  }
+
+  def awaitNoOpenConnections(listener: HttpEngine.Listener): Unit = {
+    val metrics = listener.connectionMetrics.get
+    val deadline = System.nanoTime + 5000L * 1000 * 1000
+    while (metrics.open > 0 && System.nanoTime < deadline) {
+      Thread.sleep(10)
+    }
+    metrics.open shouldBe 0
+  }
+
+  /** Reads the given socket until the server closes the connection. */
+  def readAll(socket: Socket): String = {
+    val out = new ByteArrayOutputStream
+    socket.getInputStream.transferTo(out)
+    out.toString(ISO_8859_1)
+  }
+}
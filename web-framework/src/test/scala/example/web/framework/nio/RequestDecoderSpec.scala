@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2019 Schlichtherle IT Services.
+ * All rights reserved. Use is subject to license terms.
+ */
+package example.web.framework.nio
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets.ISO_8859_1
+import java.nio.file.{Files, Paths}
+
+import example.web.framework.nio.RequestDecoderSpec._
+import org.scalatest.Matchers._
+import org.scalatest.WordSpec
+
+import scala.jdk.CollectionConverters._
+
+class RequestDecoderSpec extends WordSpec {
+
+  "A request decoder" should {
+    "decode a chunked request which arrives byte by byte" in {
+      val feed = new Feed
+      val request = "POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+        "5;ext=1\r\nHello\r\n2\r\n, \r\n6\r\nworld!\r\n0\r\nTrailer: x\r\n\r\n"
+      val decoded = request.init.flatMap(c => feed(c.toString))
+      decoded shouldBe empty
+      val last = feed(request.last.toString)
+      last.map(body) shouldBe List("Hello, world!")
+      feed.buffered shouldBe 0
+    }
+
+    "consume the body as it arrives" in {
+      val feed = new Feed
+      feed("POST /upload HTTP/1.1\r\nContent-Length: 10\r\nExpect: 100-continue\r\n\r\n") shouldBe empty
+      feed.decoder.expectsContinue shouldBe true
+      feed.decoder.inProgress shouldBe true
+      feed.buffered shouldBe 0
+      feed("01234") shouldBe empty
+      feed.buffered shouldBe 0
+      feed("56789GET / HTTP/1.1\r\n").map(body) shouldBe List("0123456789")
+      feed.decoder.inProgress shouldBe false
+      feed.buffered shouldBe "GET / HTTP/1.1\r\n".length
+      feed("\r\n").map(_.method) shouldBe List("GET")
+    }
+
+    "decode pipelined requests" in {
+      val feed = new Feed
+      val request = "POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n"
+      feed(request * 3).map(body) shouldBe List("abc", "abc", "abc")
+    }
+
+    "spill bodies which exceed the memory threshold to a temporary file" in {
+      val feed = new Feed(memoryThreshold = 6)
+      val requests = feed("POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" +
+        "5\r\nHello\r\n2\r\n, \r\n6\r\nworld!\r\n0\r\n\r\n" +
+        "POST /echo HTTP/1.1\r\nContent-Length: 6\r\n\r\nabcdef" +
+        "POST /upload HTTP/1.1\r\nContent-Length: 10\r\n\r\n0123456789")
+      requests.map(_.body == null) shouldBe List(true, false, true)
+      requests.map(_.size) shouldBe List(13, 6, 10)
+      requests.map(body) shouldBe List("Hello, world!", "abcdef", "0123456789")
+      requests.foreach(_.close())
+      requests.filter(null != _.file).map(_.file.isOpen) shouldBe List(false, false)
+    }
+
+    "release the temporary file of an incomplete body when closed" in {
+      assumeSpilledFilesCanBeCounted()
+      val feed = new Feed(memoryThreshold = 4)
+      val before = spilledFiles
+      feed("POST /upload HTTP/1.1\r\nContent-Length: 10\r\n\r\n01234") shouldBe empty
+      feed.decoder.inProgress shouldBe true
+      spilledFiles shouldBe before + 1
+      feed.decoder.close()
+      feed.decoder.inProgress shouldBe false
+      spilledFiles shouldBe before
+    }
+
+    "reject bodies which exceed the maximum size" in {
+      val feed = new Feed(maxBodySize = 4)
+      intercept[RequestException] {
+        feed("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n2\r\n")
+      }.statusCode shouldBe 413
+    }
+
+    "reject chunk size lines which are too long" in {
+      val feed = new Feed
+      feed("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n") shouldBe empty
+      intercept[RequestException](feed("1" * (RequestDecoder.MAX_HEADER_SIZE + 1))).statusCode shouldBe 431
+    }
+  }
+}
+
+private object RequestDecoderSpec {
+
+  /** Feeds input into a decoder like a connection does: It appends the input to its buffer, decodes all complete
+    * requests and compacts the buffer.
+    */
+  final class Feed(maxBodySize: Int = 1024 * 1024, memoryThreshold: Int = NioHttpEngine.REQUEST_BODY_MEMORY_THRESHOLD) {
+
+    val decoder = new RequestDecoder(maxBodySize, memoryThreshold)
+
+    private var buffer = ByteBuffer.allocate(16)
+
+    def apply(input: String): List[RequestDecoder.Request] = {
+      val bytes = input.getBytes(ISO_8859_1)
+      if (buffer.remaining < bytes.length) {
+        buffer.flip()
+        buffer = ByteBuffer.allocate(buffer.remaining + bytes.length).put(buffer)
+      }
+      buffer.put(bytes).flip()
+      try {
+        Iterator.continually(decoder.decode(buffer)).takeWhile(null != _).toList
+      } finally {
+        buffer.compact()
+      }
+    }
+
+    def buffered: Int = buffer.position
+  }
+
+  def body(request: RequestDecoder.Request): String = new String(request.bodyStream.readAllBytes, ISO_8859_1)
+
+  /** Returns the number of open temporary files which hold spilled request bodies.
+    * This works on Linux only because it scans `/proc/self/fd` - the files may have been unlinked already.
+    */
+  def spilledFiles: Int = {
+    val fds = Files.newDirectoryStream(Paths.get("/proc/self/fd"))
+    try {
+      fds.iterator.asScala.count { fd =>
+        try {
+          Files.readSymbolicLink(fd).toString.contains("nio-request-body")
+        } catch {
+          case _: IOException => false
+        }
+      }
+    } finally {
+      fds.close()
+    }
+  }
+
+  def assumeSpilledFilesCanBeCounted(): Unit = {
+    assume(Files.isDirectory(Paths.get("/proc/self/fd")), "Counting open files requires /proc/self/fd.")
+  }
+}